@@ -0,0 +1,83 @@
+package cz.zcu.kiv.WorkflowDesigner.Benchmarks;
+
+import cz.zcu.kiv.WorkflowDesigner.Block;
+import cz.zcu.kiv.WorkflowDesigner.Workflow;
+import org.json.JSONArray;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2018 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * This file hosts the benchmarks of loading the block types of a module and instantiating the blocks of a workflow.
+ **********************************************************************************************************************/
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class BlockBenchmarks {
+
+    private Workflow workflow;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Workflows.quietLogging();
+        workflow = new Workflow(BlockBenchmarks.class.getClassLoader(), Workflows.MODULE, null, "");
+        workflow.initializeBlocks();
+    }
+
+    /**
+     * A new Workflow loads the block types and definitions before describing them
+     */
+    @Benchmark
+    public JSONArray initializeBlocksCold() throws Exception {
+        return new Workflow(BlockBenchmarks.class.getClassLoader(), Workflows.MODULE, null, "").initializeBlocks();
+    }
+
+    @Benchmark
+    public JSONArray initializeBlocksWarm() throws Exception {
+        return workflow.initializeBlocks();
+    }
+
+    @Benchmark
+    public Map<Integer, Block> indexBlocks(Blocks blocks) throws Exception {
+        return workflow.indexBlocks(blocks.blocksArray);
+    }
+
+    @State(Scope.Benchmark)
+    public static class Blocks {
+
+        @Param({"100", "1000", "10000"})
+        public int blocks;
+
+        private JSONArray blocksArray;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            blocksArray = Workflows.fanOut(blocks).getJSONArray("blocks");
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package cz.zcu.kiv.WorkflowDesigner.Benchmarks;
+
+import cz.zcu.kiv.WorkflowDesigner.BinaryBlockDataCodec;
+import cz.zcu.kiv.WorkflowDesigner.BlockData;
+import cz.zcu.kiv.WorkflowDesigner.BlockDataCodec;
+import cz.zcu.kiv.WorkflowDesigner.SerializationBlockDataCodec;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2018 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * This file hosts the benchmarks of encoding and decoding the BlockData exchanged with blocks running as JARs.
+ **********************************************************************************************************************/
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class BlockDataBenchmarks {
+
+    @Param({"binary", "serialization"})
+    public String codec;
+
+    //Number of values of the array and list inputs
+    @Param({"10", "100000"})
+    public int size;
+
+    private BlockDataCodec blockDataCodec;
+    private BlockData blockData;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Workflows.quietLogging();
+        blockDataCodec = codec.equals("binary") ? new BinaryBlockDataCodec() : new SerializationBlockDataCodec();
+
+        double[] samples = new double[size];
+        List<Integer> values = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            samples[i] = Math.sin(i);
+            values.add(i);
+        }
+        blockData = new BlockData("ARITHMETIC");
+        blockData.getInput().put("Samples", samples);
+        blockData.getInput().put("Values", values);
+        blockData.getProperties().put("Operation", "add");
+        blockData.getProperties().put("Scale", 2.5);
+        blockData.getOutput().put("Operand3", 42);
+        blockData.setProcessOutput("42");
+    }
+
+    @Benchmark
+    public BlockData roundTrip() throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        blockDataCodec.encode(blockData, outputStream);
+        return blockDataCodec.decode(new ByteArrayInputStream(outputStream.toByteArray()));
+    }
+}
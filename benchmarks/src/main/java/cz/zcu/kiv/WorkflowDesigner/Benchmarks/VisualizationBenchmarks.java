@@ -0,0 +1,136 @@
+package cz.zcu.kiv.WorkflowDesigner.Benchmarks;
+
+import cz.zcu.kiv.WorkflowDesigner.Visualizations.JsonWriter;
+import cz.zcu.kiv.WorkflowDesigner.Visualizations.PlotlyGraphs.Coordinate;
+import cz.zcu.kiv.WorkflowDesigner.Visualizations.PlotlyGraphs.Graph;
+import cz.zcu.kiv.WorkflowDesigner.Visualizations.PlotlyGraphs.Point;
+import cz.zcu.kiv.WorkflowDesigner.Visualizations.PlotlyGraphs.Trace;
+import cz.zcu.kiv.WorkflowDesigner.Visualizations.Table;
+import org.apache.commons.io.output.NullWriter;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2018 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * This file hosts the benchmarks of exporting the tables and graphs returned by blocks.
+ **********************************************************************************************************************/
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgs = {"-Xmx4g"})
+public class VisualizationBenchmarks {
+
+    @Benchmark
+    public JSONObject tableToJSON(Tables tables) {
+        return tables.table.toJSON();
+    }
+
+    @Benchmark
+    public String tableToCSV(Tables tables) {
+        return tables.table.toCSV();
+    }
+
+    @Benchmark
+    public String graphToJSON(Graphs graphs) {
+        return graphs.graph.toJSON().toString();
+    }
+
+    @Benchmark
+    public void graphWriteJSON(Graphs graphs) throws IOException {
+        try (JsonWriter writer = new JsonWriter(new NullWriter())) {
+            graphs.graph.writeJSON(writer);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Tables {
+
+        @Param({"10000", "100000"})
+        public int rows;
+
+        private Table table;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            List<String> headers = new ArrayList<>();
+            for (int column = 0; column < 10; column++) {
+                headers.add("Column " + column);
+            }
+            List<List<String>> tableRows = new ArrayList<>(rows);
+            for (int row = 0; row < rows; row++) {
+                List<String> cells = new ArrayList<>(headers.size());
+                for (int column = 0; column < headers.size(); column++) {
+                    cells.add(String.valueOf(row * 0.5 + column));
+                }
+                tableRows.add(cells);
+            }
+            table = new Table();
+            table.setColumnHeaders(headers);
+            table.setRows(tableRows);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Graphs {
+
+        @Param({"1000000"})
+        public int points;
+
+        //Traces built from coordinate arrays or through the Point adapter
+        @Param({"arrays", "points"})
+        public String builder;
+
+        private Graph graph;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            Trace trace = new Trace();
+            if (builder.equals("arrays")) {
+                double[] x = new double[points];
+                double[] y = new double[points];
+                for (int i = 0; i < points; i++) {
+                    x[i] = i;
+                    y[i] = Math.sin(i / 1000.0);
+                }
+                trace.setCoordinates(x, y);
+            }
+            else {
+                List<Point> tracePoints = new ArrayList<>(points);
+                for (int i = 0; i < points; i++) {
+                    tracePoints.add(new Point(new Coordinate((double) i, Math.sin(i / 1000.0))));
+                }
+                trace.setPoints(tracePoints);
+            }
+            graph = new Graph();
+            graph.setTraces(Collections.singletonList(trace));
+        }
+    }
+}
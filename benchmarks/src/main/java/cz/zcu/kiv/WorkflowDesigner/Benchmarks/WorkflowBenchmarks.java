@@ -0,0 +1,104 @@
+package cz.zcu.kiv.WorkflowDesigner.Benchmarks;
+
+import cz.zcu.kiv.WorkflowDesigner.Workflow;
+import org.apache.commons.io.FileUtils;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2018 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * This file hosts the benchmarks of executing synthetic workflows.
+ * Workflows of n blocks are executed sequentially or on a thread pool as chains, diamonds and wide fan-outs.
+ **********************************************************************************************************************/
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class WorkflowBenchmarks {
+
+    @Param({"100", "1000"})
+    public int blocks;
+
+    @Param({"chain", "diamond", "fanout"})
+    public String shape;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    private String workflowJSON;
+    private Workflow workflow;
+    private ExecutorService executorService;
+    private File outputFolder;
+    private JSONObject jObject;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Workflows.quietLogging();
+        JSONObject workflowObject;
+        switch (shape) {
+            case "chain":
+                workflowObject = Workflows.chain(blocks);
+                break;
+            case "diamond":
+                workflowObject = Workflows.diamond(blocks);
+                break;
+            default:
+                workflowObject = Workflows.fanOut(blocks);
+        }
+        workflowJSON = workflowObject.toString();
+        outputFolder = Files.createTempDirectory("benchmark_output").toFile();
+        workflow = new Workflow(WorkflowBenchmarks.class.getClassLoader(), Workflows.MODULE, null, "");
+        if (parallel) {
+            executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+            workflow.setExecutorService(executorService);
+        }
+        //Load the block types once, they are measured on their own
+        workflow.initializeBlocks();
+    }
+
+    @Setup(Level.Invocation)
+    public void parse() {
+        //Execution records its results in the JSON, so every invocation gets a fresh copy
+        jObject = new JSONObject(workflowJSON);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (executorService != null) executorService.shutdown();
+        FileUtils.deleteQuietly(outputFolder);
+    }
+
+    @Benchmark
+    public JSONArray execute() throws Exception {
+        return workflow.execute(jObject, outputFolder.getAbsolutePath(), null);
+    }
+}
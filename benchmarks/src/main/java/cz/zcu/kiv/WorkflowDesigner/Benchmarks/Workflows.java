@@ -0,0 +1,134 @@
+package cz.zcu.kiv.WorkflowDesigner.Benchmarks;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2018 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * This file hosts the builder of the synthetic workflows used by the benchmarks.
+ * Workflows are made of the CONSTANT and ARITHMETIC blocks of the test package.
+ **********************************************************************************************************************/
+
+public class Workflows {
+
+    public static final String MODULE = ":test";
+
+    private final JSONArray blocks = new JSONArray();
+    private final JSONArray edges = new JSONArray();
+    private int lastId = 0;
+
+    /**
+     * Chain of n blocks, every ARITHMETIC block adds the constant to the result of the previous one
+     */
+    public static JSONObject chain(int n) {
+        Workflows workflow = new Workflows();
+        int constant = workflow.constant(1);
+        int previous = constant;
+        String output = "Operand";
+        for (int i = 1; i < n; i++) {
+            previous = workflow.arithmetic(previous, output, constant, "Operand");
+            output = "Operand3";
+        }
+        return workflow.toJSON();
+    }
+
+    /**
+     * Sequence of diamonds of about n blocks, every diamond splits a result into two blocks and joins them again
+     */
+    public static JSONObject diamond(int n) {
+        Workflows workflow = new Workflows();
+        int previous = workflow.constant(1);
+        String output = "Operand";
+        for (int i = 1; i + 2 < n; i += 3) {
+            int left = workflow.arithmetic(previous, output, previous, output);
+            int right = workflow.arithmetic(previous, output, previous, output);
+            previous = workflow.arithmetic(left, "Operand3", right, "Operand3");
+            output = "Operand3";
+        }
+        return workflow.toJSON();
+    }
+
+    /**
+     * A single constant consumed by n - 1 independent blocks
+     */
+    public static JSONObject fanOut(int n) {
+        Workflows workflow = new Workflows();
+        int constant = workflow.constant(1);
+        for (int i = 1; i < n; i++) {
+            workflow.arithmetic(constant, "Operand", constant, "Operand");
+        }
+        return workflow.toJSON();
+    }
+
+    private int constant(int value) {
+        JSONObject values = new JSONObject();
+        values.put("Value", String.valueOf(value));
+        return block("CONSTANT", values);
+    }
+
+    private int arithmetic(int block1, String output1, int block2, String output2) {
+        JSONObject values = new JSONObject();
+        values.put("Operation", "add");
+        int id = block("ARITHMETIC", values);
+        edge(block1, output1, id, "Operand1");
+        edge(block2, output2, id, "Operand2");
+        return id;
+    }
+
+    private int block(String type, JSONObject values) {
+        JSONObject block = new JSONObject();
+        block.put("id", ++lastId);
+        block.put("type", type);
+        block.put("module", "test.jar:test");
+        block.put("values", values);
+        blocks.put(block);
+        return lastId;
+    }
+
+    private void edge(int block1, String output, int block2, String input) {
+        JSONObject edge = new JSONObject();
+        edge.put("id", edges.length() + 1);
+        edge.put("block1", block1);
+        edge.put("connector1", new JSONArray().put(output).put("output"));
+        edge.put("block2", block2);
+        edge.put("connector2", new JSONArray().put(input).put("input"));
+        edges.put(edge);
+    }
+
+    private JSONObject toJSON() {
+        JSONObject workflow = new JSONObject();
+        workflow.put("blocks", blocks);
+        workflow.put("edges", edges);
+        return workflow;
+    }
+
+    /**
+     * Keep the per block logging of the workflow out of the measurements
+     */
+    public static void quietLogging() {
+        Logger.getLogger("").setLevel(Level.WARNING);
+        Logger.getLogger("cz.zcu.kiv").setLevel(Level.WARNING);
+    }
+}
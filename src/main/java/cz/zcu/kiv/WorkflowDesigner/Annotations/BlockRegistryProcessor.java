@@ -0,0 +1,150 @@
+package cz.zcu.kiv.WorkflowDesigner.Annotations;
+
+import cz.zcu.kiv.WorkflowDesigner.BlockRegistry;
+import org.json.JSONArray;
+import org.json.JSONTokener;
+
+import javax.annotation.processing.*;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.util.Elements;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.*;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2018 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * This file hosts the annotation processor that writes the block index of a module at compile time.
+ * The index lists every @BlockType class with its inputs, outputs, properties and execute method.
+ **********************************************************************************************************************/
+
+@SupportedAnnotationTypes({
+        "cz.zcu.kiv.WorkflowDesigner.Annotations.BlockType",
+        "cz.zcu.kiv.WorkflowDesigner.Annotations.BlockInput",
+        "cz.zcu.kiv.WorkflowDesigner.Annotations.BlockOutput",
+        "cz.zcu.kiv.WorkflowDesigner.Annotations.BlockProperty",
+        "cz.zcu.kiv.WorkflowDesigner.Annotations.BlockExecute"
+})
+public class BlockRegistryProcessor extends AbstractProcessor {
+
+    //Entries found in this compilation indexed by class name
+    private final Map<String, BlockRegistry.Entry> entries = new TreeMap<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Elements elements = processingEnv.getElementUtils();
+
+        for(Element element:roundEnv.getElementsAnnotatedWith(BlockType.class)){
+            if(element.getKind()!=ElementKind.CLASS){
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "@BlockType can only be applied to classes", element);
+                continue;
+            }
+            TypeElement typeElement = (TypeElement) element;
+            BlockType blockType = typeElement.getAnnotation(BlockType.class);
+            BlockRegistry.Entry entry = new BlockRegistry.Entry(elements.getBinaryName(typeElement).toString(),
+                    blockType.type(), blockType.family(), blockType.description(), blockType.runAsJar());
+
+            for(Element member:typeElement.getEnclosedElements()){
+                String memberName = member.getSimpleName().toString();
+                if(member.getKind()==ElementKind.FIELD){
+                    BlockInput blockInput = member.getAnnotation(BlockInput.class);
+                    if(blockInput!=null)
+                        entry.addInput(memberName, blockInput.name(), blockInput.type());
+
+                    BlockOutput blockOutput = member.getAnnotation(BlockOutput.class);
+                    if(blockOutput!=null)
+                        entry.addOutput(memberName, blockOutput.name(), blockOutput.type());
+
+                    BlockProperty blockProperty = member.getAnnotation(BlockProperty.class);
+                    if(blockProperty!=null)
+                        entry.addProperty(memberName, blockProperty.name(), blockProperty.type(), blockProperty.defaultValue(), blockProperty.description());
+                }
+                else if(member.getKind()==ElementKind.METHOD && member.getAnnotation(BlockExecute.class)!=null){
+                    if(!((ExecutableElement) member).getParameters().isEmpty()){
+                        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "@BlockExecute methods cannot have parameters", member);
+                    }
+                    if(entry.getExecuteMethod()==null)
+                        entry.setExecuteMethod(memberName);
+                }
+            }
+
+            if(entry.getExecuteMethod()==null){
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "No method annotated with @BlockExecute", typeElement);
+            }
+            entries.put(entry.getClassName(), entry);
+        }
+
+        if(roundEnv.processingOver() && !entries.isEmpty()){
+            writeRegistry(elements);
+        }
+        return false;
+    }
+
+    /**
+     * Write the index resource, keeping entries of an existing index whose classes were not recompiled
+     * @param elements - Element utilities to check if a class still exists
+     */
+    private void writeRegistry(Elements elements) {
+        Filer filer = processingEnv.getFiler();
+        Map<String, BlockRegistry.Entry> merged = new TreeMap<>();
+
+        try {
+            FileObject existing = filer.getResource(StandardLocation.CLASS_OUTPUT, "", BlockRegistry.RESOURCE);
+            try(Reader reader = existing.openReader(true)){
+                JSONArray array = new JSONArray(new JSONTokener(reader));
+                for(int i=0;i<array.length();i++){
+                    BlockRegistry.Entry entry = BlockRegistry.Entry.fromJSON(array.getJSONObject(i));
+                    if(elements.getTypeElement(entry.getClassName().replace('$','.'))!=null)
+                        merged.put(entry.getClassName(), entry);
+                }
+            }
+        }
+        catch (Exception e){
+            //No previous index, this is a full compilation
+        }
+        merged.putAll(entries);
+
+        JSONArray array = new JSONArray();
+        for(BlockRegistry.Entry entry:merged.values()){
+            array.put(entry.toJSON());
+        }
+
+        try {
+            FileObject resource = filer.createResource(StandardLocation.CLASS_OUTPUT, "", BlockRegistry.RESOURCE);
+            try(Writer writer = resource.openWriter()){
+                writer.write(array.toString(4));
+            }
+        }
+        catch (IOException e){
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Could not write block index: "+e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,506 @@
+package cz.zcu.kiv.WorkflowDesigner;
+
+import cz.zcu.kiv.WorkflowDesigner.Visualizations.PlotlyGraphs.*;
+import cz.zcu.kiv.WorkflowDesigner.Visualizations.Table;
+import org.apache.commons.lang3.SerializationException;
+import org.apache.commons.lang3.SerializationUtils;
+
+import java.io.*;
+import java.util.*;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2018 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * This file hosts a compact binary codec for BlockData.
+ * Values of the workflow types are written with a one byte tag followed by their raw contents, only opaque objects
+ * fall back to Java serialization.
+ **********************************************************************************************************************/
+
+public class BinaryBlockDataCodec implements BlockDataCodec {
+
+    private static final int MAGIC = 0x57444232;
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte INTEGER = 2;
+    private static final byte LONG = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte FLOAT = 5;
+    private static final byte BOOLEAN = 6;
+    private static final byte FILE = 7;
+    private static final byte LIST = 8;
+    private static final byte MAP = 9;
+    private static final byte INT_ARRAY = 10;
+    private static final byte LONG_ARRAY = 11;
+    private static final byte DOUBLE_ARRAY = 12;
+    private static final byte STRING_ARRAY = 13;
+    private static final byte TABLE = 14;
+    private static final byte GRAPH = 15;
+    private static final byte OBJECT = 127;
+
+    private final ClassLoader classLoader;
+
+    public BinaryBlockDataCodec() {
+        this(null);
+    }
+
+    /**
+     * @param classLoader - classLoader resolving the classes of opaque objects, null to resolve them like
+     *                    SerializationUtils
+     */
+    public BinaryBlockDataCodec(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+    }
+
+    @Override
+    public void encode(BlockData blockData, OutputStream outputStream) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream));
+        out.writeInt(MAGIC);
+        writeString(out, blockData.getName());
+        writeMap(out, blockData.getInput());
+        writeMap(out, blockData.getOutput());
+        writeMap(out, blockData.getProperties());
+        writeValue(out, blockData.getProcessOutput());
+        out.flush();
+    }
+
+    @Override
+    public BlockData decode(InputStream inputStream) throws IOException {
+        //Not buffered, so nothing after the BlockData is consumed from the stream
+        DataInputStream in = new DataInputStream(inputStream);
+        if (in.readInt() != MAGIC) throw new IOException("Stream does not contain binary BlockData");
+        BlockData blockData = new BlockData(readString(in));
+        readMap(in, blockData.getInput());
+        readMap(in, blockData.getOutput());
+        readMap(in, blockData.getProperties());
+        blockData.setProcessOutput(readValue(in));
+        return blockData;
+    }
+
+    /**
+     * Encode a graph on its own, used for the full resolution sidecar of decimated graphs
+     */
+    public void encodeGraph(Graph graph, OutputStream outputStream) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream));
+        out.writeInt(MAGIC);
+        writeGraph(out, graph);
+        out.flush();
+    }
+
+    public Graph decodeGraph(InputStream inputStream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(inputStream));
+        if (in.readInt() != MAGIC) throw new IOException("Stream does not contain a binary Graph");
+        return readGraph(in);
+    }
+
+    private void writeMap(DataOutputStream out, Map<?, ?> map) throws IOException {
+        if (map == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(map.size());
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            writeValue(out, entry.getKey());
+            writeValue(out, entry.getValue());
+        }
+    }
+
+    private <K, V> Map<K, V> readMap(DataInputStream in, Map<K, V> map) throws IOException {
+        int size = in.readInt();
+        if (size < 0) return null;
+        for (int i = 0; i < size; i++) {
+            @SuppressWarnings("unchecked") K key = (K) readValue(in);
+            @SuppressWarnings("unchecked") V value = (V) readValue(in);
+            map.put(key, value);
+        }
+        return map;
+    }
+
+    private void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        }
+        else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeString(out, (String) value);
+        }
+        else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) value);
+        }
+        else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        }
+        else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        }
+        else if (value instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) value);
+        }
+        else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        }
+        else if (value.getClass() == File.class) {
+            out.writeByte(FILE);
+            writeString(out, ((File) value).getPath());
+        }
+        else if (isPlainList(value)) {
+            List<?> list = (List<?>) value;
+            out.writeByte(LIST);
+            out.writeInt(list.size());
+            for (Object element : list) {
+                writeValue(out, element);
+            }
+        }
+        else if (value.getClass() == HashMap.class || value.getClass() == LinkedHashMap.class) {
+            out.writeByte(MAP);
+            out.writeBoolean(value instanceof LinkedHashMap);
+            writeMap(out, (Map<?, ?>) value);
+        }
+        else if (value instanceof int[]) {
+            int[] array = (int[]) value;
+            out.writeByte(INT_ARRAY);
+            out.writeInt(array.length);
+            for (int element : array) out.writeInt(element);
+        }
+        else if (value instanceof long[]) {
+            long[] array = (long[]) value;
+            out.writeByte(LONG_ARRAY);
+            out.writeInt(array.length);
+            for (long element : array) out.writeLong(element);
+        }
+        else if (value instanceof double[]) {
+            double[] array = (double[]) value;
+            out.writeByte(DOUBLE_ARRAY);
+            out.writeInt(array.length);
+            for (double element : array) out.writeDouble(element);
+        }
+        else if (value.getClass() == String[].class) {
+            String[] array = (String[]) value;
+            out.writeByte(STRING_ARRAY);
+            out.writeInt(array.length);
+            for (String element : array) writeString(out, element);
+        }
+        else if (value.getClass() == Table.class) {
+            out.writeByte(TABLE);
+            writeTable(out, (Table) value);
+        }
+        else if (value.getClass() == Graph.class) {
+            out.writeByte(GRAPH);
+            writeGraph(out, (Graph) value);
+        }
+        else if (value instanceof Serializable) {
+            out.writeByte(OBJECT);
+            byte[] bytes = SerializationUtils.serialize((Serializable) value);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        else {
+            throw new NotSerializableException(value.getClass().getName());
+        }
+    }
+
+    private Object readValue(DataInputStream in) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case STRING:
+                return readString(in);
+            case INTEGER:
+                return in.readInt();
+            case LONG:
+                return in.readLong();
+            case DOUBLE:
+                return in.readDouble();
+            case FLOAT:
+                return in.readFloat();
+            case BOOLEAN:
+                return in.readBoolean();
+            case FILE:
+                return new File(readString(in));
+            case LIST: {
+                int size = in.readInt();
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) list.add(readValue(in));
+                return list;
+            }
+            case MAP: {
+                Map<Object, Object> map = in.readBoolean() ? new LinkedHashMap<>() : new HashMap<>();
+                return readMap(in, map);
+            }
+            case INT_ARRAY: {
+                int[] array = new int[in.readInt()];
+                for (int i = 0; i < array.length; i++) array[i] = in.readInt();
+                return array;
+            }
+            case LONG_ARRAY: {
+                long[] array = new long[in.readInt()];
+                for (int i = 0; i < array.length; i++) array[i] = in.readLong();
+                return array;
+            }
+            case DOUBLE_ARRAY: {
+                double[] array = new double[in.readInt()];
+                for (int i = 0; i < array.length; i++) array[i] = in.readDouble();
+                return array;
+            }
+            case STRING_ARRAY: {
+                String[] array = new String[in.readInt()];
+                for (int i = 0; i < array.length; i++) array[i] = readString(in);
+                return array;
+            }
+            case TABLE:
+                return readTable(in);
+            case GRAPH:
+                return readGraph(in);
+            case OBJECT: {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                if (classLoader == null) {
+                    try {
+                        return SerializationUtils.deserialize(bytes);
+                    }
+                    catch (SerializationException e) {
+                        throw new IOException(e);
+                    }
+                }
+                try (ObjectInputStream objectStream = new LoaderObjectInputStream(new ByteArrayInputStream(bytes), classLoader)) {
+                    return objectStream.readObject();
+                }
+                catch (ClassNotFoundException e) {
+                    throw new IOException(e);
+                }
+            }
+            default:
+                throw new IOException("Unknown value tag " + tag);
+        }
+    }
+
+    /**
+     * Lists decoded by this codec are ArrayLists, so only lists that can be replaced by one are written as LIST
+     */
+    private static boolean isPlainList(Object value) {
+        return value instanceof List && value instanceof RandomAccess && !(value instanceof Vector)
+                && value.getClass().getName().startsWith("java.util.");
+    }
+
+    private void writeTable(DataOutputStream out, Table table) throws IOException {
+        writeString(out, table.getCaption());
+        writeStrings(out, table.getColumnHeaders());
+        writeStrings(out, table.getRowHeaders());
+        List<List<String>> rows = table.getRows();
+        out.writeInt(rows == null ? -1 : rows.size());
+        if (rows != null) {
+            for (List<String> row : rows) writeStrings(out, row);
+        }
+    }
+
+    private Table readTable(DataInputStream in) throws IOException {
+        Table table = new Table();
+        table.setCaption(readString(in));
+        table.setColumnHeaders(readStrings(in));
+        table.setRowHeaders(readStrings(in));
+        int size = in.readInt();
+        if (size >= 0) {
+            List<List<String>> rows = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) rows.add(readStrings(in));
+            table.setRows(rows);
+        }
+        return table;
+    }
+
+    private void writeGraph(DataOutputStream out, Graph graph) throws IOException {
+        List<Trace> traces = graph.getTraces();
+        out.writeInt(traces == null ? -1 : traces.size());
+        if (traces != null) {
+            for (Trace trace : traces) writeTrace(out, trace);
+        }
+        Layout layout = graph.getLayout();
+        out.writeBoolean(layout != null);
+        if (layout != null) {
+            writeString(out, layout.getTitle());
+            writeAxis(out, layout.getXaxis());
+            writeAxis(out, layout.getYaxis());
+        }
+    }
+
+    private Graph readGraph(DataInputStream in) throws IOException {
+        Graph graph = new Graph();
+        int size = in.readInt();
+        if (size >= 0) {
+            List<Trace> traces = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) traces.add(readTrace(in));
+            graph.setTraces(traces);
+        }
+        if (in.readBoolean()) {
+            Layout layout = new Layout();
+            layout.setTitle(readString(in));
+            layout.setXaxis(readAxis(in));
+            layout.setYaxis(readAxis(in));
+            graph.setLayout(layout);
+        }
+        return graph;
+    }
+
+    //Bits of the mask telling which arrays a trace has
+    private static final int HAS_X = 1, HAS_Y = 2, HAS_Z = 4, HAS_LABELS = 8;
+
+    private void writeTrace(DataOutputStream out, Trace trace) throws IOException {
+        writeString(out, trace.getName());
+        writeString(out, trace.getTraceMode() == null ? null : trace.getTraceMode().getMode());
+        writeString(out, trace.getGraphType() == null ? null : trace.getGraphType().getType());
+        out.writeBoolean(trace.getMarker() != null);
+        if (trace.getMarker() != null) writeValue(out, trace.getMarker().getSize());
+
+        double[] x = trace.getX(), y = trace.getY(), z = trace.getZ();
+        String[] labels = trace.getLabels();
+        int mask = 0;
+        if (x != null) mask |= HAS_X;
+        if (y != null) mask |= HAS_Y;
+        if (z != null) mask |= HAS_Z;
+        if (labels != null) mask |= HAS_LABELS;
+        out.writeInt(trace.size());
+        out.writeByte(mask);
+        writeDoubles(out, x);
+        writeDoubles(out, y);
+        writeDoubles(out, z);
+        if (labels != null) {
+            for (String label : labels) writeString(out, label);
+        }
+    }
+
+    private Trace readTrace(DataInputStream in) throws IOException {
+        Trace trace = new Trace();
+        trace.setName(readString(in));
+        String mode = readString(in);
+        if (mode != null) trace.setTraceMode(new TraceMode(mode));
+        String type = readString(in);
+        if (type != null) trace.setGraphType(new GraphType(type));
+        if (in.readBoolean()) {
+            Marker marker = new Marker();
+            marker.setSize((Double) readValue(in));
+            trace.setMarker(marker);
+        }
+
+        int size = in.readInt();
+        int mask = in.readByte();
+        double[] x = (mask & HAS_X) != 0 ? readDoubles(in, size) : null;
+        double[] y = (mask & HAS_Y) != 0 ? readDoubles(in, size) : null;
+        double[] z = (mask & HAS_Z) != 0 ? readDoubles(in, size) : null;
+        trace.setCoordinates(x, y, z);
+        if ((mask & HAS_LABELS) != 0) {
+            String[] labels = new String[size];
+            for (int i = 0; i < size; i++) labels[i] = readString(in);
+            trace.setLabels(labels);
+        }
+        return trace;
+    }
+
+    private void writeDoubles(DataOutputStream out, double[] values) throws IOException {
+        if (values == null) return;
+        for (double value : values) out.writeDouble(value);
+    }
+
+    private double[] readDoubles(DataInputStream in, int size) throws IOException {
+        double[] values = new double[size];
+        for (int i = 0; i < size; i++) values[i] = in.readDouble();
+        return values;
+    }
+
+    private void writeAxis(DataOutputStream out, Axis axis) throws IOException {
+        out.writeBoolean(axis != null);
+        if (axis != null) {
+            out.writeDouble(axis.getMin());
+            out.writeDouble(axis.getMax());
+        }
+    }
+
+    private Axis readAxis(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) return null;
+        Axis axis = new Axis();
+        axis.setMin(in.readDouble());
+        axis.setMax(in.readDouble());
+        return axis;
+    }
+
+    private void writeStrings(DataOutputStream out, List<String> strings) throws IOException {
+        out.writeInt(strings == null ? -1 : strings.size());
+        if (strings != null) {
+            for (String string : strings) writeString(out, string);
+        }
+    }
+
+    private List<String> readStrings(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        if (size < 0) return null;
+        List<String> strings = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) strings.add(readString(in));
+        return strings;
+    }
+
+    /**
+     * Write a string of any length, writeUTF is limited to 64K bytes
+     */
+    private void writeString(DataOutputStream out, String string) throws IOException {
+        if (string == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = string.getBytes(BlockProtocol.ENCODING);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, BlockProtocol.ENCODING);
+    }
+
+    /**
+     * Resolves the classes of opaque objects in a given classloader first
+     */
+    private static class LoaderObjectInputStream extends ObjectInputStream {
+        private final ClassLoader classLoader;
+
+        LoaderObjectInputStream(InputStream inputStream, ClassLoader classLoader) throws IOException {
+            super(inputStream);
+            this.classLoader = classLoader;
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            try {
+                return Class.forName(desc.getName(), false, classLoader);
+            }
+            catch (ClassNotFoundException e) {
+                //Fall back to the default resolution, which also handles primitive types
+                return super.resolveClass(desc);
+            }
+        }
+    }
+}
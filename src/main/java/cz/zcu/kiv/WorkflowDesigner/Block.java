@@ -2,15 +2,17 @@ package cz.zcu.kiv.WorkflowDesigner;
 
 import cz.zcu.kiv.WorkflowDesigner.Annotations.*;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.SerializationUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.reflections.Reflections;
 import java.io.*;
-import java.lang.annotation.Annotation;
 import java.lang.reflect.*;
+import java.net.URISyntaxException;
 import java.nio.charset.Charset;
+import java.security.CodeSource;
 import java.util.*;
 
 import org.apache.commons.logging.Log;
@@ -94,41 +96,31 @@ public class Block {
         JSONObject values = blockObject.getJSONObject("values");
 
         //Map properties to object parameters
+        Map<String, BlockMetadata.Accessor> propertyFields = getMetadata().getProperties();
         for(String key:this.properties.keySet()){
-            if(values.has(key)){
-                for (Field f: context.getClass().getDeclaredFields()) {
-                    f.setAccessible(true);
-                    BlockProperty blockProperty = f.getAnnotation(BlockProperty.class);
-                    if (blockProperty != null) {
-                        if(blockProperty.name().equals(key)){
-                            properties.put(blockProperty.name(), new Property(blockProperty.name(), blockProperty.type(), blockProperty.defaultValue(), blockProperty.description()));
-
-                            //Assign object attributes from properties
-                            if(blockProperty.type().endsWith("[]")){
-
-                                //Dealing with List properties
-                                if(f.getType().isArray()){
-                                    //Unsupported by reflection
-                                    throw new IllegalAccessException("Arrays Not supported, Use List instead");
-                                }
-                                List<Object>components=new ArrayList<>();
-                                JSONArray array=values.getJSONArray(key);
-                                ParameterizedType listType = (ParameterizedType) f.getGenericType();
-                                Class<?> listClass = (Class<?>) listType.getActualTypeArguments()[0];
-                                for(int i=0;i<array.length();i++){
-                                    if(listClass.equals(File.class)){
-                                        components.add(new File(workflow.getRemoteDirectory()+File.separator+array.get(i)));
-                                    }
-                                    else components.add(array.get(i));
-                                }
-                                f.set(context,components);
-                            }
-                            else f.set(context,getFieldFromJSON(f,values, key));
-                            break;
-                        }
+            BlockMetadata.Accessor f = propertyFields.get(key);
+            if(f==null || !values.has(key)) continue;
+
+            //Assign object attributes from properties
+            if(f.isList()){
+
+                //Dealing with List properties
+                if(f.getFieldType().isArray()){
+                    //Unsupported by reflection
+                    throw new IllegalAccessException("Arrays Not supported, Use List instead");
+                }
+                List<Object>components=new ArrayList<>();
+                JSONArray array=values.getJSONArray(key);
+                Class<?> listClass = f.getListType();
+                for(int i=0;i<array.length();i++){
+                    if(File.class.equals(listClass)){
+                        components.add(new File(workflow.getRemoteDirectory()+File.separator+array.get(i)));
                     }
+                    else components.add(array.get(i));
                 }
+                f.set(context,components);
             }
+            else f.set(context,getFieldFromJSON(f.getField(),values, key));
         }
 
         logger.info("Instantiated "+getName()+" block from Workflow");
@@ -260,23 +252,81 @@ public class Block {
      * Process a block and return value returned by BlockExecute block
      * @param blocks Map of blocks
      * @param fields Mapping of fieldName to actual field
-     * @param stdOut Standard Output stream builder
-     * @param stdErr Error Stream builder
+     * @param stdOut Standard Output stream builder, receives the whole output
+     * @param stdErr Error Stream builder, receives the whole output
      * @return Object returned by BlockExecute method
      * @throws Exception
      */
     public Object processBlock(Map<Integer,Block> blocks, Map<String,InputField> fields, StringBuilder stdOut, StringBuilder stdErr) throws Exception {
+        return processBlock(blocks, fields, captureInto(stdOut), captureInto(stdErr));
+    }
+
+    /**
+     * Capture forwarding everything appended to it to a builder
+     */
+    private static OutputCapture captureInto(final StringBuilder builder) {
+        OutputCapture capture = new OutputCapture();
+        capture.setListener(new OutputCapture.Listener() {
+            @Override
+            public void outputAppended(OutputCapture capture, CharSequence text) {
+                synchronized (builder) {
+                    builder.append(text);
+                }
+            }
+        });
+        return capture;
+    }
+
+    /**
+     * Process a block and return value returned by BlockExecute block
+     * @param blocks Map of blocks
+     * @param fields Mapping of fieldName to actual field
+     * @param stdOut Standard Output capture
+     * @param stdErr Error Stream capture
+     * @return Object returned by BlockExecute method
+     * @throws Exception
+     */
+    public Object processBlock(Map<Integer,Block> blocks, Map<String,InputField> fields, OutputCapture stdOut, OutputCapture stdErr) throws Exception {
+        return processBlock(blocks, fields, null, stdOut, stdErr, null);
+    }
+
+    /**
+     * processBlock - take the inputs of the block from the outputs of its source blocks kept in a store
+     * @param outputs - Store holding the outputs of processed blocks, outputs it does not hold are read from the source blocks
+     * @param timings - Receives the time spent assigning inputs and executing the block, may be null
+     */
+    public Object processBlock(Map<Integer,Block> blocks, Map<String,InputField> fields, OutputStore outputs, OutputCapture stdOut, OutputCapture stdErr, BlockTimings timings) throws Exception {
        Object output;
         BlockData blockData=new BlockData(getName());
 
         logger.info("Processing a "+getName()+" block");
 
         //Assign inputs to the instance
-        assignInputs(blocks,fields,blockData);
+        long phaseStart = System.nanoTime();
+        assignInputs(blocks,fields,outputs,blockData);
+        if(timings!=null) timings.setInputTime(System.nanoTime()-phaseStart);
+
+        phaseStart = System.nanoTime();
+        try {
+            output = execute(blockData, stdOut, stdErr, timings);
+        }
+        finally {
+            if(timings!=null) timings.setExecuteTime(System.nanoTime()-phaseStart);
+        }
+
+        setProcessed(true);
+        logger.info("Execution of "+getName()+ " block completed successfully");
+        return output;
+    }
 
+    /**
+     * Execute the block with its inputs assigned, as a JAR or natively
+     */
+    private Object execute(BlockData blockData, OutputCapture stdOut, OutputCapture stdErr, BlockTimings timings) throws Exception {
+        Object output;
         if(isJarExecutable() && workflow.getJarDirectory()!=null){
             //Execute block as an external JAR file
-            output = executeAsJar(blockData,stdOut,stdErr);
+            output = executeAsJar(blockData,stdOut,stdErr,timings);
         }
         else{
             logger.info("Executing "+getName()+" block natively");
@@ -294,95 +344,50 @@ public class Block {
                 throw e;
             }
         }
-
-        setProcessed(true);
-        logger.info("Execution of "+getName()+ " block completed successfully");
         return output;
     }
 
     /**
      * Execute block externally as a JAR
      *
+     * Uses the isolated classloaders of the workflow if they are set, else its worker pool if one is set,
+     * otherwise a new JVM is started for the block
+     *
      * @param blockData Serializable BlockData model representing all the data needed by a block to execute
      * @param stdOut Standard Output Stream
      * @param stdErr Standard Error Stream
+     * @param timings Receives the CPU time and peak memory of the JVM executing the block, may be null
      * @return output returned by BlockExecute Method
      * @throws Exception when output file is not created
      */
-    private Object executeAsJar(BlockData blockData, StringBuilder stdOut, StringBuilder stdErr) throws Exception {
+    private Object executeAsJar(BlockData blockData, OutputCapture stdOut, OutputCapture stdErr, BlockTimings timings) throws Exception {
 
         Object output;
         logger.info("Executing "+getName()+" as a JAR");
         try {
-            String fileName = "obj_" + new Date().getTime() ;
-            File inputFile=new File(workflow.getJarDirectory()+File.separator+fileName+".in");
-            File outputFile =new File(workflow.getJarDirectory()+File.separator+fileName+".out");
-
-            //Serialize and write BlockData object to a file
-            FileOutputStream fos = new FileOutputStream(inputFile);
-            ObjectOutputStream oos = new ObjectOutputStream(fos);
-            oos.writeObject(blockData);
-            oos.close();
-
             File jarDirectory = new File(workflow.getJarDirectory());
             jarDirectory.mkdirs();
             String jarFilePath = jarDirectory.getAbsolutePath()+File.separator+getModule().split(":")[0];
             File jarFile = new File(jarFilePath);
 
-            //Calling jar file externally with entry point at the Block's main method
-            String[]args=new String[]{"java", "-cp",jarFile.getAbsolutePath() ,"cz.zcu.kiv.WorkflowDesigner.Block",inputFile.getAbsolutePath(),outputFile.getAbsolutePath(),getModule().split(":")[1]};
-            ProcessBuilder pb = new ProcessBuilder(args);
-
-            //Store output and error streams to files
-            logger.info("Executing jar file "+jarFilePath);
-            File stdOutFile = new File("std_output.log");
-            pb.redirectOutput(stdOutFile);
-            File stdErrFile = new File("std_error.log");
-            pb.redirectError(stdErrFile);
-            Process ps = pb.start();
-            ps.waitFor();
-            stdOut.append(FileUtils.readFileToString(stdOutFile,Charset.defaultCharset()));
-            stdErr.append(FileUtils.readFileToString(stdErrFile,Charset.defaultCharset()));
-            InputStream is=ps.getErrorStream();
-            byte b[]=new byte[is.available()];
-            is.read(b,0,b.length);
-            String errorString = new String(b);
-            if(!errorString.isEmpty()){
-                logger.error(errorString);
-                stdErr.append(errorString);
-            }
-
-            is=ps.getInputStream();
-            b=new byte[is.available()];
-            is.read(b,0,b.length);
-            String outputString = new String(b);
-            if(!outputString.isEmpty()){
-                logger.info(outputString);
-                stdOut.append(outputString);
+            JarClassLoaderCache classLoaderCache = workflow.getJarClassLoaderCache();
+            JarWorkerPool workerPool = workflow.getJarWorkerPool();
+            if(classLoaderCache!=null){
+                logger.info("Executing jar file "+jarFilePath+" in an isolated classloader");
+                blockData = classLoaderCache.execute(jarFile, getModule().split(":")[1], blockData);
             }
-
-            FileUtils.deleteQuietly(inputFile);
-
-            if(outputFile.exists()){
-                FileInputStream fis = new FileInputStream(outputFile);
-                ObjectInputStream ois = new ObjectInputStream(fis);
-                blockData = (BlockData) ois.readObject();
-                ois.close();
-                output=blockData.getProcessOutput();
-                FileUtils.deleteQuietly(outputFile);
-                for (Field f: context.getClass().getDeclaredFields()) {
-                    f.setAccessible(true);
-                    BlockOutput blockOutput = f.getAnnotation(BlockOutput.class);
-                    if (blockOutput != null) {
-                        f.set(context,blockData.getOutput().get(blockOutput.name()));
-                    }
-                }
+            else if(workerPool!=null){
+                logger.info("Executing jar file "+jarFilePath+" in a worker");
+                blockData = workerPool.execute(jarFile, getModule().split(":")[1], blockData, workflow.getBlockDataCodec(), stdOut, stdErr, timings);
             }
             else{
-                throw new Exception("Output file does not exist");
+                blockData = executeInProcess(jarFile, blockData, stdOut, stdErr, timings);
             }
 
-
+            output=blockData.getProcessOutput();
+            for (BlockMetadata.Accessor f: getMetadata().getOutputs().values()) {
+                f.set(context,blockData.getOutput().get(f.getName()));
+            }
         }
         catch (Exception e) {
             e.printStackTrace();
@@ -393,27 +398,119 @@ public class Block {
         return output;
     }
 
+    /**
+     * Execute block in a new JVM started for this block only
+     *
+     * BlockData is exchanged over the stdin/stdout pipes of the child using the framed BlockProtocol,
+     * so payloads never touch the filesystem. Every invocation gets its own scratch directory receiving the fatal
+     * error log of the child JVM, so concurrent executions do not interfere. Temporary files of the block are created
+     * in the default temporary directory, as they may be outputs that outlive the child.
+     *
+     * @param jarFile Module JAR containing the block
+     * @param blockData Serializable BlockData model representing all the data needed by a block to execute
+     * @param stdOut Standard Output Stream
+     * @param stdErr Standard Error Stream
+     * @param timings Receives the CPU time and peak memory of the child, may be null
+     * @return BlockData holding the outputs of the block
+     * @throws Exception when the block fails or the child terminates without a result
+     */
+    private BlockData executeInProcess(File jarFile, BlockData blockData, OutputCapture stdOut, OutputCapture stdErr, BlockTimings timings) throws Exception {
+        File scratchDirectory = java.nio.file.Files.createTempDirectory("block_"+getName()+"_").toFile();
+
+        //Calling jar file externally with a worker that serves this single request
+        File errorFile = new File(scratchDirectory, "hs_err.log");
+        String[]args=new String[]{"java", "-XX:ErrorFile="+errorFile.getAbsolutePath(), "-cp",JarWorkerPool.getWorkerClasspath(jarFile) ,BlockWorker.class.getName(),"1"};
+        ProcessBuilder pb = new ProcessBuilder(args);
+
+        logger.info("Executing jar file "+jarFile.getAbsolutePath()+" in "+scratchDirectory.getAbsolutePath());
+        Process ps;
+        try {
+            ps = pb.start();
+        }
+        catch (IOException e) {
+            FileUtils.deleteQuietly(scratchDirectory);
+            throw e;
+        }
+        //Anything the JVM prints outside of the protocol is streamed into the error output as it arrives
+        Thread errorPump = stdErr.pump(ps.getErrorStream(), Charset.defaultCharset(), "block-stderr-"+getName());
+        try {
+            DataOutputStream requestStream = new DataOutputStream(new BufferedOutputStream(ps.getOutputStream()));
+            BlockProtocol.writeRequest(requestStream, getModule().split(":")[1], blockData, workflow.getBlockDataCodec());
+            requestStream.close();
+
+            DataInputStream responseStream = new DataInputStream(new BufferedInputStream(ps.getInputStream()));
+            return BlockProtocol.readResult(BlockProtocol.frameReader(responseStream), workflow.getBlockDataCodec(), stdOut, stdErr, timings);
+        }
+        finally {
+            //Closing stdin also ends a child waiting for the rest of a request that could not be written
+            IOUtils.closeQuietly(ps.getOutputStream());
+            ps.getInputStream().close();
+            ps.waitFor();
+            errorPump.join();
+            if(errorFile.isFile()){
+                stdErr.append(FileUtils.readFileToString(errorFile, Charset.defaultCharset()));
+            }
+            FileUtils.deleteQuietly(scratchDirectory);
+        }
+    }
+
+    /**
+     * @return value of a property as it is passed to the block, FILE properties were already resolved in the remote
+     * directory when they were assigned
+     */
+    Object getPropertyValue(BlockMetadata.Accessor f) {
+        return f.get(context);
+    }
+
+    /**
+     * Assign the outputs of a cached result instead of processing the block
+     * @param entry - cached result of an identical block
+     * @return object returned by the block when its result was cached
+     */
+    Object restoreResult(ResultCache.Entry entry) throws IllegalAccessException {
+        for (BlockMetadata.Accessor f: getMetadata().getOutputs().values()) {
+            Object value = entry.getOutputs().get(f.getName());
+            if (value == null && f.getFieldType().isPrimitive()) continue;
+            f.set(context, value);
+        }
+        setProcessed(true);
+        return entry.getProcessOutput();
+    }
+
+    /**
+     * @return JAR file providing the block, null if its classes are not loaded from a JAR
+     */
+    File getModuleJar() {
+        if(isJarExecutable() && workflow.getJarDirectory()!=null){
+            return new File(workflow.getJarDirectory(), getModule().split(":")[0]);
+        }
+        CodeSource codeSource = context.getClass().getProtectionDomain().getCodeSource();
+        if(codeSource==null || codeSource.getLocation()==null) return null;
+        try {
+            File file = new File(codeSource.getLocation().toURI());
+            return file.isFile() ? file : null;
+        }
+        catch (URISyntaxException | IllegalArgumentException e){
+            return null;
+        }
+    }
+
     /**
      * Assign Inputs - Maps output fields of previous block to input fields of next block and initializes properties
      * @param blocks
      * @param fields
+     * @param outputs
      * @param blockData
      * @throws FieldMismatchException
      * @throws IllegalAccessException
      * @throws ClassNotFoundException
+     * @throws IOException
      */
-    private void assignInputs(Map<Integer,Block> blocks, Map<String,InputField> fields, BlockData blockData) throws FieldMismatchException, IllegalAccessException, ClassNotFoundException {
+    private void assignInputs(Map<Integer,Block> blocks, Map<String,InputField> fields, OutputStore outputs, BlockData blockData) throws FieldMismatchException, IllegalAccessException, ClassNotFoundException, IOException {
         //Assign properties to object instance
-        for (Field f: context.getClass().getDeclaredFields()) {
-            f.setAccessible(true);
-
-            BlockProperty blockProperty = f.getAnnotation(BlockProperty.class);
-            if (blockProperty != null) {
-                if(blockProperty.type().equals(Type.FILE)){
-                    blockData.getProperties().put(blockProperty.name(),new File(workflow.getRemoteDirectory()+File.separator+f.get(context)));
-                }
-                else blockData.getProperties().put(blockProperty.name(),f.get(context));
-            }
+        BlockMetadata metadata = getMetadata();
+        for (BlockMetadata.Accessor f: metadata.getProperties().values()) {
+            blockData.getProperties().put(f.getName(),getPropertyValue(f));
         }
 
         if(getInput()!=null&&getInput().size()>0) {
@@ -451,16 +548,12 @@ public class Block {
                         throw new FieldMismatchException(key,"source");
                     }
 
-                    for (Field f: sourceBlock.getContext().getClass().getDeclaredFields()) {
-                        f.setAccessible(true);
-
-                        BlockOutput blockOutput = f.getAnnotation(BlockOutput.class);
-                        if (blockOutput != null){
-                            if(blockOutput.name().equals(sourceData.getName())) {
-                                value = f.get(sourceBlock.getContext());
-                                break;
-                            }
-                        }
+                    BlockMetadata.Accessor sourceField = sourceBlock.getMetadata().getOutputs().get(sourceData.getName());
+                    if (outputs != null && outputs.contains(sourceBlockId, sourceParam)){
+                        value = outputs.take(sourceBlockId, sourceParam);
+                    }
+                    else if (sourceField != null){
+                        value = sourceField.get(sourceBlock.getContext());
                     }
 
                     components.add(value);
@@ -469,27 +562,19 @@ public class Block {
 
 
                 //Assigning outputs to destination
-                for (Field f: context.getClass().getDeclaredFields()) {
-                    f.setAccessible(true);
-
-                    BlockInput blockInput = f.getAnnotation(BlockInput.class);
-                    if (blockInput != null) {
-                        if(blockInput.name().equals(destinationData.getName())){
-                            if(!blockInput.type().endsWith("[]")){
-                                Object val=components.get(0);
-                                f.set(context,val);
-                                blockData.getInput().put(destinationData.getName(),val);
-                            }
-                            else{
-                                if(f.getType().isArray()){
-                                    throw new IllegalAccessException("Arrays not supported, Use Lists Instead");
-                                }
-                                f.set(context,f.getType().cast(components));
-                                blockData.getInput().put(destinationData.getName(),components);
-                            }
-
-                            break;
+                BlockMetadata.Accessor f = metadata.getInputs().get(destinationData.getName());
+                if (f != null) {
+                    if(!f.isList()){
+                        Object val=components.get(0);
+                        f.set(context,val);
+                        blockData.getInput().put(destinationData.getName(),val);
+                    }
+                    else{
+                        if(f.getFieldType().isArray()){
+                            throw new IllegalAccessException("Arrays not supported, Use Lists Instead");
                         }
+                        f.set(context,f.getFieldType().cast(components));
+                        blockData.getInput().put(destinationData.getName(),components);
                     }
                 }
 
@@ -504,15 +589,14 @@ public class Block {
      * @return whatever object is returned by the method
      */
     public Object process() throws InvocationTargetException, IllegalAccessException {
-        Object output = null;
-        for(Method method:context.getClass().getDeclaredMethods()){
-            method.setAccessible(true);
-            if(method.getAnnotation(BlockExecute.class)!=null){
-                    output =  method.invoke(context);
-                    break;
-            }
-        }
-        return output;
+        return getMetadata().execute(context);
+    }
+
+    /**
+     * @return cached reflective metadata of the context class
+     */
+    public BlockMetadata getMetadata() {
+        return BlockMetadata.of(context.getClass());
     }
 
     public Map<String, Property> getProperties() {
@@ -558,33 +642,94 @@ public class Block {
         if(getOutput()==null)
             setOutput(new HashMap<String, Data>());
 
-        for (Field f: context.getClass().getDeclaredFields()) {
-            f.setAccessible(true);
+        BlockMetadata metadata = getMetadata();
+        for (BlockMetadata.Accessor f: metadata.getProperties().values()) {
+            BlockProperty blockProperty = f.getField().getAnnotation(BlockProperty.class);
+            properties.put(blockProperty.name(),new Property(blockProperty.name(),blockProperty.type(),blockProperty.defaultValue(), blockProperty.description()));
+        }
 
-            BlockProperty blockProperty = f.getAnnotation(BlockProperty.class);
-            if (blockProperty != null){
-                properties.put(blockProperty.name(),new Property(blockProperty.name(),blockProperty.type(),blockProperty.defaultValue(), blockProperty.description()));
-            }
+        for (BlockMetadata.Accessor f: metadata.getInputs().values()) {
+            input.put(f.getName(),new Data(f.getName(),f.getType(),getInputCardinality(f.getType())));
+        }
 
-            BlockInput blockInput = f.getAnnotation(BlockInput.class);
-            if (blockInput != null){
-                String cardinality="";
-                if(blockInput.type().endsWith("[]")){
-                    cardinality=WorkflowCardinality.MANY_TO_MANY;
-                }
-                else{
-                    cardinality=WorkflowCardinality.ONE_TO_ONE;
-                }
-                input.put(blockInput.name(),new Data(blockInput.name(),blockInput.type(),cardinality));
+        for (BlockMetadata.Accessor f: metadata.getOutputs().values()) {
+            output.put(f.getName(),new Data(f.getName(),f.getType(),WorkflowCardinality.MANY_TO_MANY));
+        }
+        logger.info("Initialized "+getName()+" block from annotations");
+
+    }
+
+    /**
+     * Get the cardinality of an input from its type, list types accept many connections
+     * @param type - Type of the input
+     * @return cardinality of the input
+     */
+    static String getInputCardinality(String type){
+        if(type.endsWith("[]")){
+            return WorkflowCardinality.MANY_TO_MANY;
+        }
+        else{
+            return WorkflowCardinality.ONE_TO_ONE;
+        }
+    }
+
+    /**
+     * Find the class annotated with a block type in a package.
+     * The compile time block index is used if present, otherwise the package is scanned with reflection.
+     *
+     * @param packageName - Package containing the block
+     * @param blockTypeName - Type of the block
+     * @param classLoader - classLoader to load the class from
+     * @return annotated class or null if it was not found
+     */
+    static Class<?> findBlockType(String packageName, String blockTypeName, ClassLoader classLoader) throws IOException, ClassNotFoundException {
+        for(BlockRegistry.Entry entry:BlockRegistry.load(classLoader).getEntries(packageName)){
+            if(entry.getType().equals(blockTypeName)){
+                return Class.forName(entry.getClassName(), true, classLoader);
             }
+        }
 
-            BlockOutput blockOutput = f.getAnnotation(BlockOutput.class);
-            if (blockOutput != null){
-                output.put(blockOutput.name(),new Data(blockOutput.name(),blockOutput.type(),WorkflowCardinality.MANY_TO_MANY));
+        Set<Class<?>> blockTypes = new Reflections(packageName, classLoader).getTypesAnnotatedWith(BlockType.class);
+        for (Class<?> blockType : blockTypes) {
+            if (blockType.getAnnotation(BlockType.class).type().equals(blockTypeName)) {
+                return blockType;
             }
         }
-        logger.info("Initialized "+getName()+" block from annotations");
+        return null;
+    }
+
+    /**
+     * Execute an instance of a block class with the inputs and properties of a BlockData object.
+     * The process output and the values of all outputs are stored back into the BlockData object.
+     *
+     * @param obj - Instance of a class annotated with BlockType
+     * @param blockData - Inputs and properties of the block
+     * @throws Exception when the class has no BlockExecute method or the method fails
+     */
+    static void runBlockData(Object obj, BlockData blockData) throws Exception {
+        BlockMetadata metadata = BlockMetadata.of(obj.getClass());
+
+        for(BlockMetadata.Accessor field:metadata.getInputs().values()){
+            field.set(obj,blockData.getInput().get(field.getName()));
+        }
+        for(BlockMetadata.Accessor field:metadata.getProperties().values()){
+            field.set(obj,blockData.getProperties().get(field.getName()));
+        }
+
+        if(metadata.getExecuteMethod()!=null){
+            Object outputObj=metadata.execute(obj);
+            blockData.setProcessOutput(outputObj);
+        }
+        else{
+            logger.error("No method annotated with Workflow Designer BlockExecute was found");
+            throw new Exception("Error finding Execute Method");
+        }
+
+        blockData.setOutput(new HashMap<String, Object>());
 
+        for(BlockMetadata.Accessor field:metadata.getOutputs().values()){
+            blockData.getOutput().put(field.getName(),field.get(obj));
+        }
     }
 
     /**
@@ -598,20 +743,7 @@ public class Block {
             //Reading BlockData object from file
             BlockData blockData = SerializationUtils.deserialize(FileUtils.readFileToByteArray(new File(args[0])));
 
-            Set<Class<?>> blockTypes = new Reflections(args[2]).getTypesAnnotatedWith(BlockType.class);
-
-            Class type = null;
-
-            for (Class blockType : blockTypes) {
-                Annotation annotation = blockType.getAnnotation(BlockType.class);
-                Class<? extends Annotation>  currentType = annotation.annotationType();
-
-                String blockTypeName = (String) currentType.getDeclaredMethod("type").invoke(annotation, (Object[]) null);
-                if (blockData.getName().equals(blockTypeName)) {
-                    type=blockType;
-                    break;
-                }
-            }
+            Class type = findBlockType(args[2], blockData.getName(), Block.class.getClassLoader());
 
             Object obj;
             if(type!=null){
@@ -623,45 +755,7 @@ public class Block {
             }
 
 
-            for(Field field:type.getDeclaredFields()){
-                field.setAccessible(true);
-                if(field.getAnnotation(BlockInput.class)!=null){
-                    field.set(obj,blockData.getInput().get(field.getAnnotation(BlockInput.class).name()));
-                }
-                else if(field.getAnnotation(BlockProperty.class)!=null){
-                    field.set(obj,blockData.getProperties().get(field.getAnnotation(BlockProperty.class).name()));
-                }
-            }
-
-
-            Method executeMethod = null;
-
-            for(Method m:type.getDeclaredMethods()){
-                m.setAccessible(true);
-                if(m.getAnnotation(BlockExecute.class)!=null){
-                    executeMethod=m;
-                    break;
-                }
-            }
-
-            if(executeMethod!=null){
-                Object outputObj=executeMethod.invoke(obj);
-                blockData.setProcessOutput(outputObj);
-            }
-            else{
-                logger.error("No method annotated with Workflow Designer BlockExecute was found");
-                throw new Exception("Error finding Execute Method");
-            }
-
-            blockData.setOutput(new HashMap<String, Object>());
-
-            for(Field field:type.getDeclaredFields()){
-                field.setAccessible(true);
-                if(field.getAnnotation(BlockOutput.class)!=null){
-                    blockData.getOutput().put(field.getAnnotation(BlockOutput.class).name(),field.get(obj));
-                }
-
-            }
+            runBlockData(obj, blockData);
 
             //Write output object to file
             FileOutputStream fos = FileUtils.openOutputStream(new File(args[1]));
@@ -0,0 +1,47 @@
+package cz.zcu.kiv.WorkflowDesigner;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2018 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * This file hosts the interface of the codecs used to exchange BlockData with external block processes.
+ * Implementations need a public no argument constructor, the child process instantiates the codec named in the request.
+ **********************************************************************************************************************/
+
+public interface BlockDataCodec {
+
+    /**
+     * Write BlockData to a stream
+     * @param blockData - inputs, properties and outputs of a block
+     * @param outputStream - stream to write to, it is not closed
+     */
+    void encode(BlockData blockData, OutputStream outputStream) throws IOException;
+
+    /**
+     * Read BlockData written by encode
+     * @param inputStream - stream to read from, it is not closed
+     * @return decoded BlockData
+     */
+    BlockData decode(InputStream inputStream) throws IOException;
+}
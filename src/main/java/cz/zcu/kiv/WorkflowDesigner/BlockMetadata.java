@@ -0,0 +1,273 @@
+package cz.zcu.kiv.WorkflowDesigner;
+
+import cz.zcu.kiv.WorkflowDesigner.Annotations.*;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.*;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2018 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * This file hosts the reflective metadata of an annotated block class.
+ * The annotations of a class are resolved once and cached together with MethodHandle accessors for its fields.
+ **********************************************************************************************************************/
+
+public class BlockMetadata {
+
+    private static final ClassValue<BlockMetadata> CACHE = new ClassValue<BlockMetadata>() {
+        @Override
+        protected BlockMetadata computeValue(Class<?> type) {
+            return new BlockMetadata(type);
+        }
+    };
+
+    private final Class<?> type;
+    private final BlockType blockType;
+    private final Map<String, Accessor> inputs = new LinkedHashMap<>();
+    private final Map<String, Accessor> outputs = new LinkedHashMap<>();
+    private final Map<String, Accessor> properties = new LinkedHashMap<>();
+    private Method executeMethod;
+    private MethodHandle execute;
+
+    /**
+     * Get the metadata of a block class, computing it on first access
+     * @param type - Class annotated with BlockType
+     * @return cached metadata of the class
+     * @throws IllegalArgumentException if the method annotated with BlockExecute has parameters
+     */
+    public static BlockMetadata of(Class<?> type) {
+        return CACHE.get(type);
+    }
+
+    private BlockMetadata(Class<?> type) {
+        this.type = type;
+        this.blockType = type.getAnnotation(BlockType.class);
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+        try {
+            for (Field f : type.getDeclaredFields()) {
+                BlockInput blockInput = f.getAnnotation(BlockInput.class);
+                if (blockInput != null) {
+                    inputs.put(blockInput.name(), new Accessor(lookup, f, blockInput.name(), blockInput.type()));
+                }
+
+                BlockOutput blockOutput = f.getAnnotation(BlockOutput.class);
+                if (blockOutput != null) {
+                    outputs.put(blockOutput.name(), new Accessor(lookup, f, blockOutput.name(), blockOutput.type()));
+                }
+
+                BlockProperty blockProperty = f.getAnnotation(BlockProperty.class);
+                if (blockProperty != null) {
+                    properties.put(blockProperty.name(), new Accessor(lookup, f, blockProperty.name(), blockProperty.type()));
+                }
+            }
+
+            for (Method method : type.getDeclaredMethods()) {
+                if (method.getAnnotation(BlockExecute.class) != null) {
+                    if (method.getParameterTypes().length > 0) {
+                        throw new IllegalArgumentException("@BlockExecute method " + method.getName() + " of block "
+                                + type.getName() + " cannot have parameters");
+                    }
+                    method.setAccessible(true);
+                    executeMethod = method;
+                    MethodHandle handle = lookup.unreflect(method);
+                    if (Modifier.isStatic(method.getModifiers())) {
+                        //Static methods ignore the instance they are invoked on
+                        handle = MethodHandles.dropArguments(handle, 0, Object.class);
+                    }
+                    execute = handle.asType(MethodType.methodType(Object.class, Object.class));
+                    break;
+                }
+            }
+        }
+        catch (IllegalAccessException e) {
+            //Members are made accessible before they are unreflected
+            throw new IllegalStateException("Could not access members of " + type.getName(), e);
+        }
+    }
+
+    public Class<?> getType() {
+        return type;
+    }
+
+    /**
+     * @return BlockType annotation of the class or null if it is not annotated
+     */
+    public BlockType getBlockType() {
+        return blockType;
+    }
+
+    /**
+     * @return Mapping of input name to accessor of the annotated field
+     */
+    public Map<String, Accessor> getInputs() {
+        return Collections.unmodifiableMap(inputs);
+    }
+
+    /**
+     * @return Mapping of output name to accessor of the annotated field
+     */
+    public Map<String, Accessor> getOutputs() {
+        return Collections.unmodifiableMap(outputs);
+    }
+
+    /**
+     * @return Mapping of property name to accessor of the annotated field
+     */
+    public Map<String, Accessor> getProperties() {
+        return Collections.unmodifiableMap(properties);
+    }
+
+    /**
+     * @return method annotated with BlockExecute or null if there is none
+     */
+    public Method getExecuteMethod() {
+        return executeMethod;
+    }
+
+    /**
+     * Invoke the method annotated by BlockExecute
+     * @param context - instance of the block class
+     * @return whatever object is returned by the method, null for void methods
+     * @throws InvocationTargetException wrapping any exception thrown by the method
+     */
+    public Object execute(Object context) throws InvocationTargetException {
+        if (execute == null) return null;
+        try {
+            return execute.invoke(context);
+        }
+        catch (Throwable e) {
+            throw new InvocationTargetException(e);
+        }
+    }
+
+    /**
+     * Getter and setter of a single annotated field
+     */
+    public static class Accessor {
+        private final Field field;
+        private final String name;
+        private final String type;
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+        private final Class<?> listType;
+
+        Accessor(MethodHandles.Lookup lookup, Field field, String name, String type) throws IllegalAccessException {
+            field.setAccessible(true);
+            this.field = field;
+            this.name = name;
+            this.type = type;
+            MethodHandle getter = lookup.unreflectGetter(field);
+            MethodHandle setter = Modifier.isFinal(field.getModifiers()) ? null : lookup.unreflectSetter(field);
+            if (Modifier.isStatic(field.getModifiers())) {
+                //Static fields ignore the instance they are accessed through
+                getter = MethodHandles.dropArguments(getter, 0, Object.class);
+                if (setter != null) setter = MethodHandles.dropArguments(setter, 0, Object.class);
+            }
+            this.getter = getter.asType(MethodType.methodType(Object.class, Object.class));
+            this.setter = setter == null ? null : setter.asType(MethodType.methodType(void.class, Object.class, Object.class));
+
+            Class<?> listType = null;
+            if (field.getGenericType() instanceof ParameterizedType) {
+                java.lang.reflect.Type argument = ((ParameterizedType) field.getGenericType()).getActualTypeArguments()[0];
+                if (argument instanceof Class) listType = (Class<?>) argument;
+            }
+            this.listType = listType;
+        }
+
+        public Field getField() {
+            return field;
+        }
+
+        /**
+         * @return name attribute of the annotation
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return type attribute of the annotation
+         */
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * @return true if the annotated type accepts many values
+         */
+        public boolean isList() {
+            return type.endsWith("[]");
+        }
+
+        /**
+         * @return Class of the field
+         */
+        public Class<?> getFieldType() {
+            return field.getType();
+        }
+
+        /**
+         * @return Class of the elements of a generic List field, null if it cannot be determined
+         */
+        public Class<?> getListType() {
+            return listType;
+        }
+
+        public Object get(Object context) {
+            try {
+                return getter.invoke(context);
+            }
+            catch (RuntimeException | Error e) {
+                throw e;
+            }
+            catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        public void set(Object context, Object value) throws IllegalAccessException {
+            if (setter == null) {
+                //Final fields can only be assigned through reflection
+                field.set(context, value);
+                return;
+            }
+            try {
+                setter.invoke(context, value);
+            }
+            catch (ClassCastException e) {
+                //Let reflection apply widening conversions between boxed primitives
+                field.set(context, value);
+            }
+            catch (RuntimeException | Error e) {
+                throw e;
+            }
+            catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
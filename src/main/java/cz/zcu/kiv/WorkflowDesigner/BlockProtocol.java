@@ -0,0 +1,531 @@
+package cz.zcu.kiv.WorkflowDesigner;
+
+import java.io.*;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2018 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * This file hosts the framed protocol used to exchange BlockData with external block processes.
+ * Every frame is a one byte tag followed by the length of the payload and the payload itself.
+ * BlockData is streamed as a sequence of REQUEST or RESULT frames of at most CHUNK_SIZE bytes ended by an empty one.
+ **********************************************************************************************************************/
+
+public class BlockProtocol {
+
+    //Parent to child: execute a block, chunked payload is the package name and codec name followed by the BlockData
+    public static final byte REQUEST = 'Q';
+
+    //Parent to child: health check
+    public static final byte PING = 'P';
+
+    //Child to parent: answer to a health check
+    public static final byte PONG = 'p';
+
+    //Child to parent: execution completed, chunked payload is the BlockData holding the outputs
+    public static final byte RESULT = 'R';
+
+    //Child to parent: execution failed, payload is the stack trace, also aborts a RESULT that is being sent
+    public static final byte FAILURE = 'F';
+
+    //Child to parent: chunk of text written to System.out by the block
+    public static final byte STDOUT = 'O';
+
+    //Child to parent: chunk of text written to System.err by the block
+    public static final byte STDERR = 'E';
+
+    //Child to parent: resources used by a request, sent before its result, payload is the CPU time and peak RSS
+    public static final byte METRICS = 'M';
+
+    public static final String ENCODING = "UTF-8";
+
+    //Maximum size of a frame carrying a part of a REQUEST or RESULT payload
+    public static final int CHUNK_SIZE = 65536;
+
+    private BlockProtocol() {
+    }
+
+    /**
+     * A single frame read from a stream
+     */
+    public static class Frame {
+        private final byte tag;
+        private final byte[] payload;
+
+        public Frame(byte tag, byte[] payload) {
+            this.tag = tag;
+            this.payload = payload;
+        }
+
+        public byte getTag() {
+            return tag;
+        }
+
+        public byte[] getPayload() {
+            return payload;
+        }
+
+        /**
+         * @return payload decoded as text
+         */
+        public String getText() {
+            try {
+                return new String(payload, ENCODING);
+            }
+            catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * Write a frame and flush the stream. Frames written by different threads are never interleaved.
+     */
+    public static void writeFrame(DataOutputStream outputStream, byte tag, byte[] payload, int offset, int length) throws IOException {
+        synchronized (outputStream) {
+            outputStream.writeByte(tag);
+            outputStream.writeInt(length);
+            outputStream.write(payload, offset, length);
+            outputStream.flush();
+        }
+    }
+
+    public static void writeFrame(DataOutputStream outputStream, byte tag, byte[] payload) throws IOException {
+        writeFrame(outputStream, tag, payload, 0, payload.length);
+    }
+
+    public static void writeText(DataOutputStream outputStream, byte tag, String text) throws IOException {
+        writeFrame(outputStream, tag, text.getBytes(ENCODING));
+    }
+
+    /**
+     * Read the next frame from a stream
+     * @return frame or null if the stream ended before a new frame started
+     * @throws EOFException if the stream ended in the middle of a frame
+     */
+    public static Frame readFrame(DataInputStream inputStream) throws IOException {
+        int tag = inputStream.read();
+        if (tag < 0) return null;
+        int length = inputStream.readInt();
+        if (length < 0) throw new IOException("Invalid frame length " + length);
+        byte[] payload = new byte[length];
+        inputStream.readFully(payload);
+        return new Frame((byte) tag, payload);
+    }
+
+    /**
+     * Source of the frames of a connection, either its stream or a queue filled by a reader thread
+     */
+    public interface FrameReader {
+        /**
+         * @return next frame or null if the connection ended
+         */
+        Frame readFrame() throws IOException;
+    }
+
+    /**
+     * Receives the frames interleaved with the chunks of a payload, such as the output of a block
+     */
+    public interface FrameListener {
+        void onFrame(Frame frame) throws IOException;
+    }
+
+    /**
+     * @return reader of the frames of a stream
+     */
+    public static FrameReader frameReader(final DataInputStream inputStream) {
+        return new FrameReader() {
+            @Override
+            public Frame readFrame() throws IOException {
+                return BlockProtocol.readFrame(inputStream);
+            }
+        };
+    }
+
+    /**
+     * Stream a request to execute a block
+     * @param outputStream - connection to the child
+     * @param packageName - package containing the block class
+     * @param blockData - inputs and properties of the block
+     * @param codec - codec used for the BlockData of the request and its result
+     */
+    public static void writeRequest(DataOutputStream outputStream, String packageName, BlockData blockData, BlockDataCodec codec) throws IOException {
+        PayloadOutputStream payload = new PayloadOutputStream(outputStream, REQUEST);
+        DataOutputStream request = new DataOutputStream(payload);
+        request.writeUTF(packageName);
+        request.writeUTF(codec.getClass().getName());
+        codec.encode(blockData, request);
+        request.flush();
+        payload.close();
+    }
+
+    /**
+     * Decoded request to execute a block
+     */
+    public static class Request {
+        private final String packageName;
+        private final BlockDataCodec codec;
+        private final BlockData blockData;
+
+        Request(String packageName, BlockDataCodec codec, BlockData blockData) {
+            this.packageName = packageName;
+            this.codec = codec;
+            this.blockData = blockData;
+        }
+
+        public String getPackageName() {
+            return packageName;
+        }
+
+        /**
+         * @return codec the result has to be encoded with
+         */
+        public BlockDataCodec getCodec() {
+            return codec;
+        }
+
+        public BlockData getBlockData() {
+            return blockData;
+        }
+    }
+
+    /**
+     * Decode a request, instantiating the codec named in it
+     * @param request - payload of the request, it is not closed
+     * @param classLoader - classLoader providing the codec class
+     */
+    public static Request readRequest(InputStream request, ClassLoader classLoader) throws IOException {
+        DataInputStream inputStream = new DataInputStream(request);
+        String packageName = inputStream.readUTF();
+        String codecName = inputStream.readUTF();
+        BlockDataCodec codec;
+        try {
+            codec = (BlockDataCodec) Class.forName(codecName, true, classLoader).newInstance();
+        }
+        catch (ReflectiveOperationException | ClassCastException e) {
+            throw new IOException("Could not instantiate codec " + codecName, e);
+        }
+        return new Request(packageName, codec, codec.decode(inputStream));
+    }
+
+    /**
+     * Stream the result of a request. If encoding fails part way, the caller has to abort the result with a FAILURE frame.
+     */
+    public static void writeResult(DataOutputStream outputStream, BlockData blockData, BlockDataCodec codec) throws IOException {
+        PayloadOutputStream payload = new PayloadOutputStream(outputStream, RESULT);
+        codec.encode(blockData, payload);
+        payload.close();
+    }
+
+    /**
+     * Read the answer to a request, collecting the output and metrics of the block sent before and during the result
+     * @param frames - frames of the connection to the child
+     * @param codec - codec the request was encoded with
+     * @param stdOut - standard output of the block
+     * @param stdErr - standard error of the block, receives the stack trace if the block failed
+     * @param timings - timings of the block, may be null
+     * @return BlockData holding the outputs of the block
+     * @throws JarWorkerPool.BlockFailedException if the block failed, the connection can still be used
+     * @throws IOException if the connection ended or the result could not be decoded
+     */
+    public static BlockData readResult(FrameReader frames, BlockDataCodec codec, final OutputCapture stdOut, final OutputCapture stdErr, final BlockTimings timings) throws IOException, JarWorkerPool.BlockFailedException {
+        PayloadInputStream result = new PayloadInputStream(frames, RESULT, new FrameListener() {
+            @Override
+            public void onFrame(Frame frame) throws IOException {
+                switch (frame.getTag()) {
+                    case STDOUT:
+                        stdOut.append(frame.getText());
+                        break;
+                    case STDERR:
+                        stdErr.append(frame.getText());
+                        break;
+                    case METRICS:
+                        decodeMetrics(frame.getPayload(), timings);
+                        break;
+                    case PONG:
+                        //Late answer to a health check that timed out
+                        break;
+                    default:
+                        throw new IOException("Unexpected frame " + (char) frame.getTag());
+                }
+            }
+        });
+        try {
+            BlockData blockData = codec.decode(result);
+            result.close();
+            return blockData;
+        }
+        catch (IOException e) {
+            if (result.getFailure() == null) throw e;
+            stdErr.append(result.getFailure().getText());
+            throw new JarWorkerPool.BlockFailedException("Block failed");
+        }
+    }
+
+    /**
+     * Payload of a METRICS frame
+     * @param processCpuTime - CPU nanoseconds used by the request, -1 if unknown
+     * @param peakResidentSetSize - peak resident set size of the worker in bytes, -1 if unknown
+     */
+    public static byte[] encodeMetrics(long processCpuTime, long peakResidentSetSize) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16);
+        DataOutputStream outputStream = new DataOutputStream(bytes);
+        outputStream.writeLong(processCpuTime);
+        outputStream.writeLong(peakResidentSetSize);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Record the payload of a METRICS frame in the timings of a block
+     * @param timings - timings of the block, ignored if null
+     */
+    public static void decodeMetrics(byte[] metrics, BlockTimings timings) throws IOException {
+        if (timings == null) return;
+        DataInputStream inputStream = new DataInputStream(new ByteArrayInputStream(metrics));
+        timings.setProcessMetrics(inputStream.readLong(), inputStream.readLong());
+    }
+
+    /**
+     * OutputStream that sends everything written to it as frames with a fixed tag
+     *
+     * Frames are only cut on UTF-8 character boundaries, so every frame can be decoded as text on its own.
+     * Up to three bytes of an incomplete character are kept back until the rest of the character is written.
+     */
+    public static class FrameOutputStream extends OutputStream {
+        private final DataOutputStream outputStream;
+        private final byte tag;
+        private final byte[] buffer = new byte[8192];
+        private int count = 0;
+
+        public FrameOutputStream(DataOutputStream outputStream, byte tag) {
+            this.outputStream = outputStream;
+            this.tag = tag;
+        }
+
+        @Override
+        public synchronized void write(int b) throws IOException {
+            if (count == buffer.length) flush();
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            if (len > buffer.length - count) {
+                flush();
+                if (count == 0 && len >= buffer.length) {
+                    //Large writes are sent directly, only the incomplete character at their end is buffered
+                    int complete = completeLength(b, off, len);
+                    writeFrame(outputStream, tag, b, off, complete);
+                    count = len - complete;
+                    System.arraycopy(b, off + complete, buffer, 0, count);
+                    return;
+                }
+            }
+            while (len > 0) {
+                int chunk = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, chunk);
+                count += chunk;
+                off += chunk;
+                len -= chunk;
+                if (count == buffer.length) flush();
+            }
+        }
+
+        @Override
+        public synchronized void flush() throws IOException {
+            int complete = completeLength(buffer, 0, count);
+            if (complete > 0) {
+                writeFrame(outputStream, tag, buffer, 0, complete);
+                count -= complete;
+                System.arraycopy(buffer, complete, buffer, 0, count);
+            }
+        }
+    }
+
+    /**
+     * OutputStream that sends everything written to it as a payload of chunks with a fixed tag
+     *
+     * Closing the stream sends the empty frame that ends the payload, the underlying stream is not closed.
+     */
+    public static class PayloadOutputStream extends OutputStream {
+        private final DataOutputStream outputStream;
+        private final byte tag;
+        private final byte[] buffer = new byte[CHUNK_SIZE];
+        private int count = 0;
+        private boolean closed = false;
+
+        public PayloadOutputStream(DataOutputStream outputStream, byte tag) {
+            this.outputStream = outputStream;
+            this.tag = tag;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) flush();
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len > buffer.length - count) {
+                flush();
+                //Large writes are sent directly in chunks
+                while (len >= buffer.length) {
+                    writeFrame(outputStream, tag, b, off, buffer.length);
+                    off += buffer.length;
+                    len -= buffer.length;
+                }
+            }
+            System.arraycopy(b, off, buffer, count, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (closed) throw new IOException("Payload already ended");
+            if (count > 0) {
+                writeFrame(outputStream, tag, buffer, 0, count);
+                count = 0;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            flush();
+            writeFrame(outputStream, tag, new byte[0]);
+            closed = true;
+        }
+    }
+
+    /**
+     * InputStream over the chunks of a payload with a fixed tag, ending at the empty frame that ends the payload
+     *
+     * Frames with other tags arriving between the chunks are passed to a listener. A FAILURE frame aborts the payload.
+     * Closing the stream skips the rest of the payload, the underlying connection is not closed.
+     */
+    public static class PayloadInputStream extends InputStream {
+        private final FrameReader frames;
+        private final byte tag;
+        private final FrameListener listener;
+        private byte[] chunk = new byte[0];
+        private int position = 0;
+        private boolean ended = false;
+        private Frame failure;
+
+        /**
+         * @param listener - receives the frames with other tags, null to reject them
+         */
+        public PayloadInputStream(FrameReader frames, byte tag, FrameListener listener) {
+            this.frames = frames;
+            this.tag = tag;
+            this.listener = listener;
+        }
+
+        /**
+         * @param first - first chunk of the payload, already read from the connection
+         */
+        public PayloadInputStream(FrameReader frames, Frame first, FrameListener listener) {
+            this(frames, first.getTag(), listener);
+            chunk = first.getPayload();
+            ended = chunk.length == 0;
+        }
+
+        /**
+         * @return FAILURE frame that aborted the payload, null if the payload was not aborted
+         */
+        public Frame getFailure() {
+            return failure;
+        }
+
+        /**
+         * Read frames until there is data left in the current chunk or the payload ended
+         * @return false at the end of the payload
+         */
+        private boolean nextChunk() throws IOException {
+            while (!ended && position == chunk.length) {
+                if (failure != null) throw new IOException("Payload aborted by a failure");
+                Frame frame = frames.readFrame();
+                if (frame == null) {
+                    throw new EOFException("Connection ended in the middle of a payload");
+                }
+                else if (frame.getTag() == tag) {
+                    chunk = frame.getPayload();
+                    position = 0;
+                    ended = chunk.length == 0;
+                }
+                else if (frame.getTag() == FAILURE) {
+                    failure = frame;
+                }
+                else if (listener != null) {
+                    listener.onFrame(frame);
+                }
+                else {
+                    throw new IOException("Unexpected frame " + (char) frame.getTag() + " in a payload");
+                }
+            }
+            return !ended;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (position == chunk.length && !nextChunk()) return -1;
+            return chunk[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (position == chunk.length && !nextChunk()) return -1;
+            int count = Math.min(len, chunk.length - position);
+            System.arraycopy(chunk, position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return chunk.length - position;
+        }
+
+        @Override
+        public void close() throws IOException {
+            while (nextChunk()) {
+                position = chunk.length;
+            }
+        }
+    }
+
+    /**
+     * @return length of the bytes up to the start of a UTF-8 character left incomplete at the end of the range
+     */
+    static int completeLength(byte[] bytes, int offset, int length) {
+        //Find the lead byte of the last character among the last four bytes
+        int end = offset + length;
+        for (int i = end - 1; i >= offset && i >= end - 4; i--) {
+            int b = bytes[i] & 0xFF;
+            if ((b & 0xC0) == 0x80) continue;
+            int characterLength = b < 0x80 ? 1 : b >= 0xF0 ? 4 : b >= 0xE0 ? 3 : b >= 0xC0 ? 2 : 1;
+            return i + characterLength > end ? i - offset : length;
+        }
+        //Not UTF-8, nothing to keep back
+        return length;
+    }
+}
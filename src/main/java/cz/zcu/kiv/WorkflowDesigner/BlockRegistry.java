@@ -0,0 +1,265 @@
+package cz.zcu.kiv.WorkflowDesigner;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.*;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2018 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * This file hosts the compile time index of annotated blocks generated by the BlockRegistryProcessor.
+ * When a module contains the index, its blocks can be loaded without scanning the classpath.
+ **********************************************************************************************************************/
+
+public class BlockRegistry {
+
+    public static final String RESOURCE = "META-INF/workflow-designer/blocks.json";
+
+    private static Log logger = LogFactory.getLog(BlockRegistry.class);
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    //Classpath roots that contain an index, in the form of ClasspathHelper.forPackage
+    private final Set<String> indexedRoots = new HashSet<>();
+
+    /**
+     * Load and merge all block indexes visible to a classloader
+     * @param classLoader - classLoader to search for index resources
+     * @return registry of all indexed blocks, empty if no module has an index
+     * @throws IOException when an index cannot be read
+     */
+    public static BlockRegistry load(ClassLoader classLoader) throws IOException {
+        BlockRegistry registry = new BlockRegistry();
+        Enumeration<URL> resources = classLoader.getResources(RESOURCE);
+        while(resources.hasMoreElements()){
+            URL url = resources.nextElement();
+            String location = url.toExternalForm();
+            registry.indexedRoots.add(location.substring(0, location.length() - RESOURCE.length()));
+            try(InputStream inputStream = url.openStream()){
+                JSONArray array = new JSONArray(IOUtils.toString(inputStream, Charset.forName("UTF-8")));
+                for(int i=0;i<array.length();i++){
+                    Entry entry = Entry.fromJSON(array.getJSONObject(i));
+                    registry.entries.put(entry.getClassName(), entry);
+                }
+            }
+            logger.info("Loaded block index from "+url);
+        }
+        return registry;
+    }
+
+    /**
+     * @param packageName - package to get the blocks of, including sub packages
+     * @return indexed blocks in a package
+     */
+    public List<Entry> getEntries(String packageName) {
+        List<Entry> result = new ArrayList<>();
+        for(Entry entry:entries.values()){
+            if(packageName.isEmpty() || entry.getClassName().startsWith(packageName+".")){
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param root - classpath root as returned by ClasspathHelper.forPackage
+     * @return true if the root contains a block index
+     */
+    public boolean isIndexed(URL root) {
+        return indexedRoots.contains(root.toExternalForm());
+    }
+
+    /**
+     * @return all indexed blocks
+     */
+    public Collection<Entry> getEntries() {
+        return Collections.unmodifiableCollection(entries.values());
+    }
+
+    /**
+     * A single annotated block class as recorded at compile time
+     */
+    public static class Entry {
+        private String className;
+        private String type;
+        private String family;
+        private String description;
+        private boolean runAsJar;
+        private String executeMethod;
+
+        //Field name to annotation attributes
+        private Map<String, Data> inputs = new LinkedHashMap<>();
+        private Map<String, Data> outputs = new LinkedHashMap<>();
+        private Map<String, Property> properties = new LinkedHashMap<>();
+
+        public Entry(String className, String type, String family, String description, boolean runAsJar) {
+            this.className = className;
+            this.type = type;
+            this.family = family;
+            this.description = description;
+            this.runAsJar = runAsJar;
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public String getFamily() {
+            return family;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public boolean isRunAsJar() {
+            return runAsJar;
+        }
+
+        public String getExecuteMethod() {
+            return executeMethod;
+        }
+
+        public void setExecuteMethod(String executeMethod) {
+            this.executeMethod = executeMethod;
+        }
+
+        public Map<String, Data> getInputs() {
+            return inputs;
+        }
+
+        public Map<String, Data> getOutputs() {
+            return outputs;
+        }
+
+        public Map<String, Property> getProperties() {
+            return properties;
+        }
+
+        /**
+         * @return Mapping of input name to input Data as used by Block
+         */
+        public Map<String, Data> getInputsByName() {
+            Map<String, Data> result = new HashMap<>();
+            for(Data data:inputs.values()) result.put(data.getName(), data);
+            return result;
+        }
+
+        /**
+         * @return Mapping of output name to output Data as used by Block
+         */
+        public Map<String, Data> getOutputsByName() {
+            Map<String, Data> result = new HashMap<>();
+            for(Data data:outputs.values()) result.put(data.getName(), data);
+            return result;
+        }
+
+        /**
+         * @return Mapping of property name to Property as used by Block
+         */
+        public Map<String, Property> getPropertiesByName() {
+            Map<String, Property> result = new HashMap<>();
+            for(Property property:properties.values()) result.put(property.getName(), property);
+            return result;
+        }
+
+        public JSONObject toJSON() {
+            JSONObject entry = new JSONObject();
+            entry.put("class", className);
+            entry.put("type", type);
+            entry.put("family", family);
+            entry.put("description", description);
+            entry.put("runAsJar", runAsJar);
+            if(executeMethod!=null)
+                entry.put("execute", executeMethod);
+
+            JSONArray inputArray = new JSONArray();
+            for(Map.Entry<String, Data> input:inputs.entrySet()){
+                inputArray.put(new JSONObject().put("field", input.getKey()).put("name", input.getValue().getName()).put("type", input.getValue().getType()));
+            }
+            entry.put("inputs", inputArray);
+
+            JSONArray outputArray = new JSONArray();
+            for(Map.Entry<String, Data> output:outputs.entrySet()){
+                outputArray.put(new JSONObject().put("field", output.getKey()).put("name", output.getValue().getName()).put("type", output.getValue().getType()));
+            }
+            entry.put("outputs", outputArray);
+
+            JSONArray propertyArray = new JSONArray();
+            for(Map.Entry<String, Property> property:properties.entrySet()){
+                Property value = property.getValue();
+                propertyArray.put(new JSONObject().put("field", property.getKey()).put("name", value.getName()).put("type", value.getType())
+                        .put("defaultValue", value.getDefaultValue()).put("description", value.getDescription()));
+            }
+            entry.put("properties", propertyArray);
+            return entry;
+        }
+
+        public static Entry fromJSON(JSONObject object) {
+            Entry entry = new Entry(object.getString("class"), object.getString("type"), object.getString("family"),
+                    object.optString("description"), object.optBoolean("runAsJar", true));
+            entry.setExecuteMethod(object.optString("execute", null));
+
+            JSONArray inputArray = object.optJSONArray("inputs");
+            for(int i=0; inputArray!=null && i<inputArray.length(); i++){
+                JSONObject input = inputArray.getJSONObject(i);
+                entry.addInput(input.getString("field"), input.getString("name"), input.getString("type"));
+            }
+
+            JSONArray outputArray = object.optJSONArray("outputs");
+            for(int i=0; outputArray!=null && i<outputArray.length(); i++){
+                JSONObject output = outputArray.getJSONObject(i);
+                entry.addOutput(output.getString("field"), output.getString("name"), output.getString("type"));
+            }
+
+            JSONArray propertyArray = object.optJSONArray("properties");
+            for(int i=0; propertyArray!=null && i<propertyArray.length(); i++){
+                JSONObject property = propertyArray.getJSONObject(i);
+                entry.addProperty(property.getString("field"), property.getString("name"), property.getString("type"),
+                        property.optString("defaultValue"), property.optString("description"));
+            }
+            return entry;
+        }
+
+        public void addInput(String field, String name, String type) {
+            inputs.put(field, new Data(name, type, Block.getInputCardinality(type)));
+        }
+
+        public void addOutput(String field, String name, String type) {
+            outputs.put(field, new Data(name, type, WorkflowCardinality.MANY_TO_MANY));
+        }
+
+        public void addProperty(String field, String name, String type, String defaultValue, String description) {
+            properties.put(field, new Property(name, type, defaultValue, description));
+        }
+    }
+}
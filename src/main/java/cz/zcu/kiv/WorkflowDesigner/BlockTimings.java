@@ -0,0 +1,213 @@
+package cz.zcu.kiv.WorkflowDesigner;
+
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2018 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * This file hosts the timings and resource usage of a single block execution.
+ * Times are measured with System.nanoTime, the start of the block is also kept as wall clock time.
+ * Resources that cannot be measured on the current JVM or platform are reported as -1.
+ **********************************************************************************************************************/
+
+public class BlockTimings {
+
+    private final long queuedAt;
+    private long startedAt;
+    private long completedAt;
+    private long startTime;
+    private long inputTime;
+    private long executeTime;
+    private long outputTime;
+    private long allocatedAt = -1;
+    private long allocatedBytes = -1;
+    private long processCpuTime = -1;
+    private long peakResidentSetSize = -1;
+
+    public BlockTimings() {
+        this.queuedAt = System.nanoTime();
+    }
+
+    void started() {
+        startedAt = System.nanoTime();
+        startTime = System.currentTimeMillis();
+        allocatedAt = measureThreadAllocatedBytes();
+    }
+
+    void completed() {
+        completedAt = System.nanoTime();
+        long allocated = measureThreadAllocatedBytes();
+        if (allocatedAt >= 0 && allocated >= 0) allocatedBytes = allocated - allocatedAt;
+    }
+
+    void setInputTime(long inputTime) {
+        this.inputTime = inputTime;
+    }
+
+    void setExecuteTime(long executeTime) {
+        this.executeTime = executeTime;
+    }
+
+    void setOutputTime(long outputTime) {
+        this.outputTime = outputTime;
+    }
+
+    void setProcessMetrics(long processCpuTime, long peakResidentSetSize) {
+        this.processCpuTime = processCpuTime;
+        this.peakResidentSetSize = peakResidentSetSize;
+    }
+
+    /**
+     * @return wall clock time in milliseconds at which the block started
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * @return nanoseconds the block waited between becoming ready and starting
+     */
+    public long getQueueTime() {
+        return startedAt - queuedAt;
+    }
+
+    /**
+     * @return nanoseconds the block was running
+     */
+    public long getRunTime() {
+        return completedAt - startedAt;
+    }
+
+    /**
+     * @return nanoseconds spent assigning the outputs of the source blocks to the inputs of the block
+     */
+    public long getInputTime() {
+        return inputTime;
+    }
+
+    /**
+     * @return nanoseconds spent executing the block, natively or as a JAR
+     */
+    public long getExecuteTime() {
+        return executeTime;
+    }
+
+    /**
+     * @return nanoseconds spent persisting the output of the block into the output folder and the workflow JSON
+     */
+    public long getOutputTime() {
+        return outputTime;
+    }
+
+    /**
+     * @return bytes allocated by the thread running the block, -1 if not measured
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * @return CPU nanoseconds used by the JVM executing a JAR block, -1 for native blocks
+     */
+    public long getProcessCpuTime() {
+        return processCpuTime;
+    }
+
+    /**
+     * @return peak resident set size in bytes of the JVM executing a JAR block, -1 if not measured
+     */
+    public long getPeakResidentSetSize() {
+        return peakResidentSetSize;
+    }
+
+    /**
+     * @return metrics as stored in the workflow JSON, times in milliseconds
+     */
+    public JSONObject toJSON() {
+        JSONObject metrics = new JSONObject();
+        metrics.put("startTime", startTime);
+        metrics.put("queueTime", toMillis(getQueueTime()));
+        metrics.put("inputTime", toMillis(inputTime));
+        metrics.put("executeTime", toMillis(executeTime));
+        metrics.put("outputTime", toMillis(outputTime));
+        if (allocatedBytes >= 0) metrics.put("allocatedBytes", allocatedBytes);
+        if (processCpuTime >= 0) metrics.put("processCpuTime", toMillis(processCpuTime));
+        if (peakResidentSetSize >= 0) metrics.put("peakResidentSetSize", peakResidentSetSize);
+        return metrics;
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    /**
+     * @return bytes allocated so far by the current thread, -1 if the JVM does not measure it
+     */
+    static long measureThreadAllocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+            if (threadBean.isThreadAllocatedMemorySupported() && threadBean.isThreadAllocatedMemoryEnabled()) {
+                return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return CPU nanoseconds used by the current JVM, -1 if the JVM does not measure it
+     */
+    static long measureProcessCpuTime() {
+        OperatingSystemMXBean bean = ManagementFactory.getOperatingSystemMXBean();
+        if (bean instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) bean).getProcessCpuTime();
+        }
+        return -1;
+    }
+
+    /**
+     * @return peak resident set size of the current JVM in bytes, -1 where /proc is not available
+     */
+    static long measurePeakResidentSetSize() {
+        File status = new File("/proc/self/status");
+        if (!status.isFile()) return -1;
+        try (BufferedReader reader = new BufferedReader(new FileReader(status))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("VmHWM:")) {
+                    return Long.parseLong(line.substring(6).replace("kB", "").trim()) * 1024;
+                }
+            }
+        }
+        catch (IOException | NumberFormatException e) {
+            return -1;
+        }
+        return -1;
+    }
+}
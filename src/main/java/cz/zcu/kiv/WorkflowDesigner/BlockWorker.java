@@ -0,0 +1,160 @@
+package cz.zcu.kiv.WorkflowDesigner;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+
+import java.io.*;
+import java.util.HashMap;
+import java.util.Map;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2018 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * This file hosts the entry point of a long lived JVM that executes blocks from a module JAR.
+ * Requests are read from stdin and results are written to stdout using the BlockProtocol.
+ **********************************************************************************************************************/
+
+public class BlockWorker {
+
+    private final DataInputStream inputStream;
+    private final DataOutputStream outputStream;
+    private final PrintStream stdOut;
+    private final PrintStream stdErr;
+
+    //Block classes already resolved in this JVM indexed by package and type
+    private final Map<String, Class<?>> blockTypes = new HashMap<>();
+
+    public BlockWorker(InputStream inputStream, OutputStream outputStream) {
+        this.inputStream = new DataInputStream(new BufferedInputStream(inputStream));
+        this.outputStream = new DataOutputStream(new BufferedOutputStream(outputStream));
+        this.stdOut = new PrintStream(new BlockProtocol.FrameOutputStream(this.outputStream, BlockProtocol.STDOUT), true);
+        this.stdErr = new PrintStream(new BlockProtocol.FrameOutputStream(this.outputStream, BlockProtocol.STDERR), true);
+    }
+
+    /**
+     * @return stream that sends text to the parent as STDOUT frames
+     */
+    public PrintStream getStdOut() {
+        return stdOut;
+    }
+
+    /**
+     * @return stream that sends text to the parent as STDERR frames
+     */
+    public PrintStream getStdErr() {
+        return stdErr;
+    }
+
+    /**
+     * Serve requests until the input stream is closed
+     * @param maxRequests - number of requests to serve before returning, 0 for unlimited
+     */
+    public void serve(int maxRequests) throws IOException {
+        int served = 0;
+        BlockProtocol.FrameReader frames = BlockProtocol.frameReader(inputStream);
+        BlockProtocol.Frame frame;
+        while ((frame = frames.readFrame()) != null) {
+            switch (frame.getTag()) {
+                case BlockProtocol.PING:
+                    BlockProtocol.writeFrame(outputStream, BlockProtocol.PONG, new byte[0]);
+                    break;
+                case BlockProtocol.REQUEST:
+                    handleRequest(new BlockProtocol.PayloadInputStream(frames, frame, null));
+                    served++;
+                    break;
+                default:
+                    throw new IOException("Unexpected frame " + (char) frame.getTag());
+            }
+            if (maxRequests > 0 && served >= maxRequests) break;
+        }
+    }
+
+    /**
+     * Execute a single block and answer with its result or failure
+     * @param request - payload of the request, starting with its first chunk
+     */
+    private void handleRequest(BlockProtocol.PayloadInputStream request) throws IOException {
+        Throwable failure = null;
+        BlockProtocol.Request decoded = null;
+        long cpuTime = BlockTimings.measureProcessCpuTime();
+        try {
+            try {
+                decoded = BlockProtocol.readRequest(request, BlockWorker.class.getClassLoader());
+            }
+            finally {
+                //The rest of a request that could not be decoded is skipped to reach the next frame
+                request.close();
+            }
+            BlockData blockData = decoded.getBlockData();
+
+            Object obj = getBlockType(decoded.getPackageName(), blockData.getName()).newInstance();
+            Block.runBlockData(obj, blockData);
+        }
+        catch (Throwable e) {
+            failure = e;
+        }
+
+        //Output of the block has to arrive before its result
+        stdOut.flush();
+        stdErr.flush();
+        long cpuTimeUsed = cpuTime < 0 ? -1 : BlockTimings.measureProcessCpuTime() - cpuTime;
+        BlockProtocol.writeFrame(outputStream, BlockProtocol.METRICS, BlockProtocol.encodeMetrics(cpuTimeUsed, BlockTimings.measurePeakResidentSetSize()));
+        if (failure == null) {
+            try {
+                BlockProtocol.writeResult(outputStream, decoded.getBlockData(), decoded.getCodec());
+            }
+            catch (Throwable e) {
+                //Aborts the part of the result that was already sent
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            BlockProtocol.writeText(outputStream, BlockProtocol.FAILURE, ExceptionUtils.getStackTrace(failure));
+        }
+    }
+
+    private Class<?> getBlockType(String packageName, String blockTypeName) throws Exception {
+        String key = packageName + ":" + blockTypeName;
+        Class<?> type = blockTypes.get(key);
+        if (type == null) {
+            type = Block.findBlockType(packageName, blockTypeName, BlockWorker.class.getClassLoader());
+            if (type == null) {
+                throw new Exception("Error Finding Annotated Class for block type " + blockTypeName);
+            }
+            blockTypes.put(key, type);
+        }
+        return type;
+    }
+
+    /**
+     * Externally access main function of a worker process
+     *
+     * @param args optional maximum number of requests to serve
+     */
+    public static void main(String[] args) throws IOException {
+        //stdout carries the protocol, so anything the blocks print is sent as frames instead
+        BlockWorker worker = new BlockWorker(System.in, new FileOutputStream(FileDescriptor.out));
+        System.setOut(worker.getStdOut());
+        System.setErr(worker.getStdErr());
+
+        int maxRequests = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+        worker.serve(maxRequests);
+    }
+}
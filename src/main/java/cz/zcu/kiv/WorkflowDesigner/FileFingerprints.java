@@ -0,0 +1,228 @@
+package cz.zcu.kiv.WorkflowDesigner;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2018 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * This file hosts the service identifying files by the hash of their content.
+ * Hashes are only computed when the size, modification time or inode of a file changed since they were last recorded in a persistent index.
+ **********************************************************************************************************************/
+
+public class FileFingerprints {
+
+    private static Log logger = LogFactory.getLog(FileFingerprints.class);
+
+    //Name of the index kept in the remote directory of a workflow
+    public static final String INDEX_NAME = ".fingerprints";
+
+    private static final int MAGIC = 0x57444650;
+
+    //Files modified this close to the moment they were hashed may change again without a visible change of modification time
+    private static final long RACY_INTERVAL = 2000;
+
+    private final File indexFile;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private boolean dirty = false;
+    private int hashCount = 0;
+
+    /**
+     * @param indexFile - File persisting the fingerprints between runs, null to keep them in memory only
+     */
+    public FileFingerprints(File indexFile) {
+        this.indexFile = indexFile;
+        if (indexFile != null && indexFile.isFile()) {
+            try {
+                load();
+            }
+            catch (IOException e) {
+                logger.warn("Ignoring unreadable fingerprint index " + indexFile, e);
+                entries.clear();
+            }
+        }
+    }
+
+    private void load() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not a fingerprint index");
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                entries.put(path, new Entry(in.readLong(), in.readLong(), in.readUTF(), in.readLong(), in.readUTF()));
+            }
+        }
+    }
+
+    /**
+     * Fingerprint of the content of a file, directories are fingerprinted from the names and content of their files
+     * @param file - File to identify
+     * @return hexadecimal SHA-256 hash, or a marker if the file does not exist
+     */
+    public String fingerprint(File file) throws IOException {
+        if (!file.exists()) return "missing";
+        if (file.isDirectory()) {
+            MessageDigest digest = newDigest();
+            File[] children = file.listFiles();
+            if (children == null) throw new IOException("Could not list directory " + file);
+            Arrays.sort(children);
+            for (File child : children) {
+                //The index itself changes whenever it is saved
+                if (child.getName().startsWith(INDEX_NAME)) continue;
+                digest.update(child.getName().getBytes("UTF-8"));
+                digest.update((byte) 0);
+                digest.update(fingerprint(child).getBytes("UTF-8"));
+                digest.update((byte) 0);
+            }
+            return toHex(digest.digest());
+        }
+
+        String path = file.getCanonicalPath();
+        BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        long size = attributes.size();
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        //The inode on Unix like systems, so a file replaced by another one is noticed
+        String fileKey = String.valueOf(attributes.fileKey());
+
+        synchronized (this) {
+            Entry entry = entries.get(path);
+            if (entry != null && entry.size == size && entry.lastModified == lastModified && entry.fileKey.equals(fileKey)
+                    && entry.hashedAt - lastModified >= RACY_INTERVAL) {
+                return entry.hash;
+            }
+        }
+
+        long hashedAt = System.currentTimeMillis();
+        String hash = hash(file);
+        synchronized (this) {
+            hashCount++;
+            entries.put(path, new Entry(size, lastModified, fileKey, hashedAt, hash));
+            dirty = true;
+        }
+        return hash;
+    }
+
+    private static String hash(File file) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[65536];
+        try (InputStream inputStream = new FileInputStream(file)) {
+            int count;
+            while ((count = inputStream.read(buffer)) >= 0) {
+                digest.update(buffer, 0, count);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Save the index if fingerprints were computed since it was loaded, entries of deleted files are dropped
+     */
+    public synchronized void save() throws IOException {
+        if (indexFile == null || !dirty) return;
+        Iterator<String> iterator = entries.keySet().iterator();
+        while (iterator.hasNext()) {
+            if (!new File(iterator.next()).isFile()) iterator.remove();
+        }
+
+        File temporary = new File(indexFile.getParentFile(), indexFile.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                Entry value = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeLong(value.size);
+                out.writeLong(value.lastModified);
+                out.writeUTF(value.fileKey);
+                out.writeLong(value.hashedAt);
+                out.writeUTF(value.hash);
+            }
+        }
+        catch (IOException e) {
+            FileUtils.deleteQuietly(temporary);
+            throw e;
+        }
+        try {
+            Files.move(temporary.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        dirty = false;
+    }
+
+    public File getIndexFile() {
+        return indexFile;
+    }
+
+    /**
+     * @return number of files whose content was hashed by this instance
+     */
+    public synchronized int getHashCount() {
+        return hashCount;
+    }
+
+    /**
+     * Recorded fingerprint of a file
+     */
+    private static class Entry {
+        private final long size;
+        private final long lastModified;
+        private final String fileKey;
+        private final long hashedAt;
+        private final String hash;
+
+        Entry(long size, long lastModified, String fileKey, long hashedAt, String hash) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.fileKey = fileKey;
+            this.hashedAt = hashedAt;
+            this.hash = hash;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package cz.zcu.kiv.WorkflowDesigner;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.*;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2018 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * This file hosts a cache of isolated classloaders used to execute runAsJar blocks inside the current JVM.
+ * Every module JAR gets a child-first classloader, so its dependencies do not conflict with those of other modules.
+ **********************************************************************************************************************/
+
+public class JarClassLoaderCache implements Closeable {
+
+    private static Log logger = LogFactory.getLog(JarClassLoaderCache.class);
+
+    //Classes of these packages are always shared with the parent so that blocks and the workflow exchange the same types
+    private static final String[] PARENT_FIRST_PACKAGES = new String[]{"java.", "javax.", "sun.", "com.sun.", "cz.zcu.kiv.WorkflowDesigner."};
+
+    private int maxSize = 16;
+    private final ClassLoader parent;
+    private final LinkedHashMap<String, LoaderEntry> entries = new LinkedHashMap<String, LoaderEntry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, LoaderEntry> eldest) {
+            if (size() > maxSize) {
+                logger.info("Evicting classloader of " + eldest.getKey());
+                eldest.getValue().evict();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    /**
+     * @param parent - classLoader providing the workflow designer classes to the modules
+     */
+    public JarClassLoaderCache(ClassLoader parent) {
+        this.parent = parent;
+    }
+
+    public JarClassLoaderCache() {
+        this(JarClassLoaderCache.class.getClassLoader());
+    }
+
+    /**
+     * Execute a block from a module JAR in the current JVM.
+     * The BlockData is passed to the block as it is, without serialization.
+     *
+     * @param jarFile - Module JAR containing the block
+     * @param packageName - Package containing the block
+     * @param blockData - Inputs and properties of the block, receives the outputs
+     * @return BlockData holding the outputs of the block
+     * @throws Exception when the block cannot be found or fails
+     */
+    public BlockData execute(File jarFile, String packageName, BlockData blockData) throws Exception {
+        LoaderEntry entry = acquire(jarFile);
+        Thread thread = Thread.currentThread();
+        ClassLoader contextClassLoader = thread.getContextClassLoader();
+        try {
+            thread.setContextClassLoader(entry.loader);
+            Object obj = entry.getBlockType(packageName, blockData.getName()).newInstance();
+            Block.runBlockData(obj, blockData);
+            return blockData;
+        }
+        finally {
+            thread.setContextClassLoader(contextClassLoader);
+            release(entry);
+        }
+    }
+
+    /**
+     * Get the classloader of a JAR, creating a new one if the JAR is not cached or was modified since it was loaded
+     */
+    private synchronized LoaderEntry acquire(File jarFile) throws IOException {
+        String key = jarFile.getCanonicalPath();
+        LoaderEntry entry = entries.get(key);
+        if (entry != null && (entry.lastModified != jarFile.lastModified() || entry.length != jarFile.length())) {
+            logger.info("Reloading modified jar file " + key);
+            entries.remove(key);
+            entry.evict();
+            entry = null;
+        }
+        if (entry == null) {
+            if (!jarFile.isFile()) throw new IOException("Jar file " + key + " does not exist");
+            entry = new LoaderEntry(jarFile);
+            entries.put(key, entry);
+        }
+        entry.users++;
+        return entry;
+    }
+
+    private synchronized void release(LoaderEntry entry) {
+        entry.users--;
+        if (entry.evicted && entry.users == 0) entry.close();
+    }
+
+    /**
+     * Close all cached classloaders that are not in use, the others are closed as soon as they are released
+     */
+    @Override
+    public synchronized void close() {
+        for (LoaderEntry entry : entries.values()) {
+            entry.evict();
+        }
+        entries.clear();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @param maxSize - Number of module JARs to keep loaded, the least recently used one is evicted first
+     */
+    public void setMaxSize(int maxSize) {
+        if (maxSize < 1) throw new IllegalArgumentException("Cache size must be positive");
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Loaded module JAR
+     */
+    private class LoaderEntry {
+        private final ChildFirstClassLoader loader;
+        private final long lastModified;
+        private final long length;
+
+        //Block classes already resolved in this classloader indexed by package and type
+        private final Map<String, Class<?>> blockTypes = new HashMap<>();
+        private int users = 0;
+        private boolean evicted = false;
+
+        LoaderEntry(File jarFile) throws IOException {
+            this.lastModified = jarFile.lastModified();
+            this.length = jarFile.length();
+            this.loader = new ChildFirstClassLoader(new URL[]{jarFile.toURI().toURL()}, parent);
+        }
+
+        Class<?> getBlockType(String packageName, String blockTypeName) throws Exception {
+            String key = packageName + ":" + blockTypeName;
+            synchronized (blockTypes) {
+                Class<?> type = blockTypes.get(key);
+                if (type == null) {
+                    type = Block.findBlockType(packageName, blockTypeName, loader);
+                    if (type == null) {
+                        throw new Exception("Error Finding Annotated Class for block type " + blockTypeName);
+                    }
+                    blockTypes.put(key, type);
+                }
+                return type;
+            }
+        }
+
+        //Called with the cache locked
+        void evict() {
+            evicted = true;
+            if (users == 0) close();
+        }
+
+        void close() {
+            try {
+                loader.close();
+            }
+            catch (IOException e) {
+                logger.warn("Could not close classloader", e);
+            }
+        }
+    }
+
+    /**
+     * URLClassLoader that prefers its own classes over those of its parent, except for shared packages
+     */
+    static class ChildFirstClassLoader extends URLClassLoader {
+
+        ChildFirstClassLoader(URL[] urls, ClassLoader parent) {
+            super(urls, parent);
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> type = findLoadedClass(name);
+                if (type == null) {
+                    if (isParentFirst(name)) {
+                        return super.loadClass(name, resolve);
+                    }
+                    try {
+                        type = findClass(name);
+                    }
+                    catch (ClassNotFoundException e) {
+                        return super.loadClass(name, resolve);
+                    }
+                }
+                if (resolve) resolveClass(type);
+                return type;
+            }
+        }
+
+        @Override
+        public URL getResource(String name) {
+            URL url = findResource(name);
+            return url != null ? url : super.getResource(name);
+        }
+
+        private static boolean isParentFirst(String name) {
+            for (String prefix : PARENT_FIRST_PACKAGES) {
+                if (name.startsWith(prefix)) return true;
+            }
+            return false;
+        }
+    }
+}
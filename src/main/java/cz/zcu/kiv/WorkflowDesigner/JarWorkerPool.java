@@ -0,0 +1,418 @@
+package cz.zcu.kiv.WorkflowDesigner;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.*;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.security.CodeSource;
+import java.util.*;
+import java.util.concurrent.*;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2018 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * This file hosts a pool of long lived worker JVMs used to execute runAsJar blocks.
+ * Workers keep their loaded classes between requests, so blocks do not pay JVM startup and classpath scanning every time.
+ **********************************************************************************************************************/
+
+public class JarWorkerPool implements Closeable {
+
+    private static Log logger = LogFactory.getLog(JarWorkerPool.class);
+
+    //Maximum number of workers per module JAR
+    private int poolSize = Runtime.getRuntime().availableProcessors();
+
+    //Number of requests after which a worker is replaced, 0 for unlimited
+    private int maxRequestsPerWorker = 100;
+
+    //Time a worker gets to answer a health check
+    private long healthCheckTimeout = 5000;
+
+    //Workers idle for longer than this are health checked before they are reused
+    private long healthCheckInterval = 30000;
+
+    private final Map<String, Pool> pools = new HashMap<>();
+    private boolean closed = false;
+
+    /**
+     * Execute a block in a worker JVM of a module JAR
+     *
+     * @param jarFile - Module JAR containing the block
+     * @param packageName - Package containing the block
+     * @param blockData - Inputs and properties of the block
+     * @param codec - Codec used to exchange the BlockData with the worker
+     * @param stdOut - Standard Output of the block
+     * @param stdErr - Standard Error of the block
+     * @param timings - Receives the CPU time and peak memory of the worker, may be null
+     * @return BlockData holding the outputs of the block
+     * @throws Exception when the block fails or the worker dies
+     */
+    public BlockData execute(File jarFile, String packageName, BlockData blockData, BlockDataCodec codec, OutputCapture stdOut, OutputCapture stdErr, BlockTimings timings) throws Exception {
+        Pool pool = getPool(jarFile);
+        JarWorker worker = pool.acquire();
+        boolean reusable = false;
+        try {
+            BlockData result = worker.execute(packageName, blockData, codec, stdOut, stdErr, timings);
+            reusable = true;
+            return result;
+        }
+        catch (BlockFailedException e) {
+            //The worker itself is fine, only the block failed
+            reusable = true;
+            throw e;
+        }
+        finally {
+            pool.release(worker, reusable);
+        }
+    }
+
+    /**
+     * Execute a block in a worker JVM of a module JAR without measuring it
+     */
+    public BlockData execute(File jarFile, String packageName, BlockData blockData, BlockDataCodec codec, OutputCapture stdOut, OutputCapture stdErr) throws Exception {
+        return execute(jarFile, packageName, blockData, codec, stdOut, stdErr, null);
+    }
+
+    /**
+     * Execute a block in a worker JVM of a module JAR using the binary codec
+     */
+    public BlockData execute(File jarFile, String packageName, BlockData blockData, OutputCapture stdOut, OutputCapture stdErr) throws Exception {
+        return execute(jarFile, packageName, blockData, new BinaryBlockDataCodec(), stdOut, stdErr, null);
+    }
+
+    private synchronized Pool getPool(File jarFile) throws IOException {
+        if (closed) throw new IllegalStateException("Worker pool is closed");
+        String key = jarFile.getCanonicalPath();
+        Pool pool = pools.get(key);
+        if (pool == null) {
+            pool = new Pool(jarFile);
+            pools.put(key, pool);
+        }
+        return pool;
+    }
+
+    /**
+     * Stop all worker JVMs
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        for (Pool pool : pools.values()) {
+            pool.close();
+        }
+        pools.clear();
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * @param poolSize - Maximum number of concurrently running workers per module JAR
+     */
+    public void setPoolSize(int poolSize) {
+        if (poolSize < 1) throw new IllegalArgumentException("Pool size must be positive");
+        this.poolSize = poolSize;
+    }
+
+    public int getMaxRequestsPerWorker() {
+        return maxRequestsPerWorker;
+    }
+
+    /**
+     * @param maxRequestsPerWorker - Number of requests after which a worker JVM is recycled, 0 for unlimited
+     */
+    public void setMaxRequestsPerWorker(int maxRequestsPerWorker) {
+        this.maxRequestsPerWorker = maxRequestsPerWorker;
+    }
+
+    public long getHealthCheckTimeout() {
+        return healthCheckTimeout;
+    }
+
+    public void setHealthCheckTimeout(long healthCheckTimeout) {
+        this.healthCheckTimeout = healthCheckTimeout;
+    }
+
+    public long getHealthCheckInterval() {
+        return healthCheckInterval;
+    }
+
+    /**
+     * @param healthCheckInterval - Idle time in milliseconds after which a worker is pinged before it is reused
+     */
+    public void setHealthCheckInterval(long healthCheckInterval) {
+        this.healthCheckInterval = healthCheckInterval;
+    }
+
+    /**
+     * Build the classpath of a worker. Classes of this library come first, so workers always speak the same protocol
+     * as the parent even if the module JAR bundles an older copy of the library, as JarClassLoaderCache loads them
+     * from the parent.
+     */
+    static String getWorkerClasspath(File jarFile) {
+        String classpath = jarFile.getAbsolutePath();
+        CodeSource codeSource = BlockWorker.class.getProtectionDomain().getCodeSource();
+        if (codeSource != null && codeSource.getLocation() != null) {
+            try {
+                classpath = new File(codeSource.getLocation().toURI()).getAbsolutePath() + File.pathSeparator + classpath;
+            }
+            catch (URISyntaxException | IllegalArgumentException e) {
+                logger.warn("Could not locate the workflow designer library, using the module JAR only", e);
+            }
+        }
+        return classpath;
+    }
+
+    /**
+     * Thrown when a block executed in a worker fails
+     */
+    public static class BlockFailedException extends Exception {
+        public BlockFailedException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Workers of a single module JAR
+     */
+    private class Pool {
+        private final File jarFile;
+        private final Semaphore permits;
+        private final Deque<JarWorker> idle = new ArrayDeque<>();
+        private final Set<JarWorker> all = new HashSet<>();
+
+        Pool(File jarFile) {
+            this.jarFile = jarFile;
+            this.permits = new Semaphore(poolSize, true);
+        }
+
+        JarWorker acquire() throws IOException, InterruptedException {
+            permits.acquire();
+            try {
+                while (true) {
+                    JarWorker worker;
+                    synchronized (this) {
+                        worker = idle.pollFirst();
+                    }
+                    if (worker == null) break;
+                    if (worker.isHealthy()) return worker;
+                    logger.warn("Discarding unhealthy worker for " + jarFile);
+                    destroy(worker);
+                }
+                JarWorker worker = new JarWorker(jarFile);
+                synchronized (this) {
+                    all.add(worker);
+                }
+                return worker;
+            }
+            catch (IOException | RuntimeException e) {
+                permits.release();
+                throw e;
+            }
+        }
+
+        void release(JarWorker worker, boolean reusable) {
+            try {
+                if (reusable && !closed && (maxRequestsPerWorker <= 0 || worker.getRequests() < maxRequestsPerWorker)) {
+                    synchronized (this) {
+                        idle.addFirst(worker);
+                    }
+                }
+                else {
+                    destroy(worker);
+                }
+            }
+            finally {
+                permits.release();
+            }
+        }
+
+        void destroy(JarWorker worker) {
+            synchronized (this) {
+                all.remove(worker);
+            }
+            worker.close();
+        }
+
+        synchronized void close() {
+            for (JarWorker worker : all) {
+                worker.close();
+            }
+            all.clear();
+            idle.clear();
+        }
+    }
+
+    /**
+     * A single worker JVM
+     */
+    private class JarWorker {
+        private final Process process;
+        private final DataOutputStream outputStream;
+        //Bounded, so at most a few chunks of a result are held ahead of the decoder
+        private final BlockingQueue<BlockProtocol.Frame> frames = new LinkedBlockingQueue<>(16);
+        private int requests = 0;
+        private volatile boolean stopped = false;
+        private long lastUsed = System.currentTimeMillis();
+
+        //Marks the end of the output of the worker in the frame queue
+        private final BlockProtocol.Frame END = new BlockProtocol.Frame((byte) 0, new byte[0]);
+
+        //Frames of the worker as they are taken from the queue
+        private final BlockProtocol.FrameReader queuedFrames = new BlockProtocol.FrameReader() {
+            @Override
+            public BlockProtocol.Frame readFrame() throws IOException {
+                try {
+                    BlockProtocol.Frame frame = frames.take();
+                    return frame == END ? null : frame;
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for the worker");
+                }
+            }
+        };
+
+        JarWorker(File jarFile) throws IOException {
+            String[] args = new String[]{"java", "-cp", getWorkerClasspath(jarFile), BlockWorker.class.getName()};
+            logger.info("Starting worker for jar file " + jarFile.getAbsolutePath());
+            process = new ProcessBuilder(args).start();
+            outputStream = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+
+            final DataInputStream inputStream = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+            Thread reader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        BlockProtocol.Frame frame;
+                        while ((frame = BlockProtocol.readFrame(inputStream)) != null) {
+                            queue(frame);
+                        }
+                        queue(END);
+                    }
+                    catch (IOException e) {
+                        logger.debug("Worker output closed", e);
+                        queue(END);
+                    }
+                }
+            }, "block-worker-reader");
+            reader.setDaemon(true);
+            reader.start();
+
+            //Anything the JVM itself prints outside of the protocol is only logged
+            final InputStream errorStream = process.getErrorStream();
+            Thread errorReader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        BufferedReader lines = new BufferedReader(new InputStreamReader(errorStream, Charset.defaultCharset()));
+                        String line;
+                        while ((line = lines.readLine()) != null) {
+                            logger.warn("Worker: " + line);
+                        }
+                    }
+                    catch (IOException e) {
+                        logger.debug("Worker error stream closed", e);
+                    }
+                }
+            }, "block-worker-stderr");
+            errorReader.setDaemon(true);
+            errorReader.start();
+        }
+
+        /**
+         * Wait for room in the queue, unless the worker was closed and nobody takes frames anymore
+         */
+        private void queue(BlockProtocol.Frame frame) {
+            try {
+                while (!frames.offer(frame, 100, TimeUnit.MILLISECONDS)) {
+                    if (stopped) return;
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        int getRequests() {
+            return requests;
+        }
+
+        boolean isAlive() {
+            try {
+                process.exitValue();
+                return false;
+            }
+            catch (IllegalThreadStateException e) {
+                return true;
+            }
+        }
+
+        /**
+         * Check that the process is running and, after a long idle period, that it answers a ping in time
+         */
+        boolean isHealthy() {
+            if (!isAlive()) return false;
+            if (System.currentTimeMillis() - lastUsed < healthCheckInterval) return true;
+            try {
+                frames.clear();
+                BlockProtocol.writeFrame(outputStream, BlockProtocol.PING, new byte[0]);
+                BlockProtocol.Frame frame = frames.poll(healthCheckTimeout, TimeUnit.MILLISECONDS);
+                return frame != null && frame.getTag() == BlockProtocol.PONG;
+            }
+            catch (IOException e) {
+                return false;
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        BlockData execute(String packageName, BlockData blockData, BlockDataCodec codec, OutputCapture stdOut, OutputCapture stdErr, BlockTimings timings) throws Exception {
+            requests++;
+            try {
+                BlockProtocol.writeRequest(outputStream, packageName, blockData, codec);
+                return BlockProtocol.readResult(queuedFrames, codec, stdOut, stdErr, timings);
+            }
+            finally {
+                lastUsed = System.currentTimeMillis();
+            }
+        }
+
+        void close() {
+            stopped = true;
+            IOUtils.closeQuietly(outputStream);
+            try {
+                //Closing stdin lets the worker exit on its own
+                for (int i = 0; i < 10 && isAlive(); i++) Thread.sleep(50);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            process.destroy();
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package cz.zcu.kiv.WorkflowDesigner;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.*;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2018 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * This file hosts a listener aggregating the metrics of executed blocks per block type.
+ * Snapshots of the aggregates can be exported as JSON, for example to feed a dashboard.
+ **********************************************************************************************************************/
+
+public class MetricsRegistry extends WorkflowListenerAdapter {
+
+    private final Map<String, Summary> summaries = new TreeMap<>();
+    private long workflows = 0;
+    private long failedWorkflows = 0;
+
+    @Override
+    public void onBlockCompleted(int blockId, JSONObject blockObject, Object output, BlockTimings timings) {
+        record(blockObject, timings, false);
+    }
+
+    @Override
+    public void onBlockFailed(int blockId, JSONObject blockObject, BlockTimings timings) {
+        record(blockObject, timings, true);
+    }
+
+    @Override
+    public synchronized void onWorkflowCompleted(JSONArray blocksArray, boolean error) {
+        workflows++;
+        if (error) failedWorkflows++;
+    }
+
+    //Block ids are only unique within a workflow, the type is read from the block itself
+    private synchronized void record(JSONObject blockObject, BlockTimings timings, boolean failed) {
+        String type = blockObject.optString("type", null);
+        if (type == null) return;
+        Summary summary = summaries.get(type);
+        if (summary == null) {
+            summary = new Summary();
+            summaries.put(type, summary);
+        }
+        summary.record(timings, failed);
+    }
+
+    /**
+     * @return copy of the metrics of a block type, null if no such block was executed
+     */
+    public synchronized Summary getSummary(String blockType) {
+        Summary summary = summaries.get(blockType);
+        return summary == null ? null : new Summary(summary);
+    }
+
+    /**
+     * @return block types executed since the registry was created or reset
+     */
+    public synchronized Set<String> getBlockTypes() {
+        return new TreeSet<>(summaries.keySet());
+    }
+
+    public synchronized long getWorkflowCount() {
+        return workflows;
+    }
+
+    public synchronized long getFailedWorkflowCount() {
+        return failedWorkflows;
+    }
+
+    public synchronized void reset() {
+        summaries.clear();
+        workflows = 0;
+        failedWorkflows = 0;
+    }
+
+    /**
+     * @return snapshot of all metrics, times in milliseconds
+     */
+    public synchronized JSONObject toJSON() {
+        JSONObject metrics = new JSONObject();
+        metrics.put("workflows", workflows);
+        metrics.put("failedWorkflows", failedWorkflows);
+        JSONObject blockTypes = new JSONObject();
+        for (Map.Entry<String, Summary> entry : summaries.entrySet()) {
+            blockTypes.put(entry.getKey(), entry.getValue().toJSON());
+        }
+        metrics.put("blocks", blockTypes);
+        return metrics;
+    }
+
+    /**
+     * Aggregated metrics of the executions of a block type
+     */
+    public static class Summary {
+        private long executions = 0;
+        private long failures = 0;
+        private final Statistic queueTime;
+        private final Statistic inputTime;
+        private final Statistic executeTime;
+        private final Statistic outputTime;
+        private final Statistic allocatedBytes;
+        private final Statistic processCpuTime;
+        private final Statistic peakResidentSetSize;
+
+        Summary() {
+            queueTime = new Statistic();
+            inputTime = new Statistic();
+            executeTime = new Statistic();
+            outputTime = new Statistic();
+            allocatedBytes = new Statistic();
+            processCpuTime = new Statistic();
+            peakResidentSetSize = new Statistic();
+        }
+
+        Summary(Summary summary) {
+            executions = summary.executions;
+            failures = summary.failures;
+            queueTime = new Statistic(summary.queueTime);
+            inputTime = new Statistic(summary.inputTime);
+            executeTime = new Statistic(summary.executeTime);
+            outputTime = new Statistic(summary.outputTime);
+            allocatedBytes = new Statistic(summary.allocatedBytes);
+            processCpuTime = new Statistic(summary.processCpuTime);
+            peakResidentSetSize = new Statistic(summary.peakResidentSetSize);
+        }
+
+        void record(BlockTimings timings, boolean failed) {
+            executions++;
+            if (failed) failures++;
+            queueTime.record(timings.getQueueTime());
+            inputTime.record(timings.getInputTime());
+            executeTime.record(timings.getExecuteTime());
+            outputTime.record(timings.getOutputTime());
+            allocatedBytes.record(timings.getAllocatedBytes());
+            processCpuTime.record(timings.getProcessCpuTime());
+            peakResidentSetSize.record(timings.getPeakResidentSetSize());
+        }
+
+        public long getExecutions() {
+            return executions;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+
+        /**
+         * @return nanoseconds the blocks waited to start
+         */
+        public Statistic getQueueTime() {
+            return queueTime;
+        }
+
+        /**
+         * @return nanoseconds spent assigning inputs
+         */
+        public Statistic getInputTime() {
+            return inputTime;
+        }
+
+        /**
+         * @return nanoseconds spent executing the blocks
+         */
+        public Statistic getExecuteTime() {
+            return executeTime;
+        }
+
+        /**
+         * @return nanoseconds spent persisting outputs
+         */
+        public Statistic getOutputTime() {
+            return outputTime;
+        }
+
+        public Statistic getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        /**
+         * @return CPU nanoseconds of the JVMs executing JAR blocks
+         */
+        public Statistic getProcessCpuTime() {
+            return processCpuTime;
+        }
+
+        public Statistic getPeakResidentSetSize() {
+            return peakResidentSetSize;
+        }
+
+        JSONObject toJSON() {
+            JSONObject summary = new JSONObject();
+            summary.put("executions", executions);
+            summary.put("failures", failures);
+            summary.put("queueTime", queueTime.toJSON(1e6));
+            summary.put("inputTime", inputTime.toJSON(1e6));
+            summary.put("executeTime", executeTime.toJSON(1e6));
+            summary.put("outputTime", outputTime.toJSON(1e6));
+            if (allocatedBytes.getCount() > 0) summary.put("allocatedBytes", allocatedBytes.toJSON(1));
+            if (processCpuTime.getCount() > 0) summary.put("processCpuTime", processCpuTime.toJSON(1e6));
+            if (peakResidentSetSize.getCount() > 0) summary.put("peakResidentSetSize", peakResidentSetSize.toJSON(1));
+            return summary;
+        }
+    }
+
+    /**
+     * Count, total and maximum of a measured value, values that were not measured are skipped
+     */
+    public static class Statistic {
+        private long count = 0;
+        private long total = 0;
+        private long max = 0;
+
+        Statistic() {
+        }
+
+        Statistic(Statistic statistic) {
+            count = statistic.count;
+            total = statistic.total;
+            max = statistic.max;
+        }
+
+        void record(long value) {
+            if (value < 0) return;
+            count++;
+            total += value;
+            max = Math.max(max, value);
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return count == 0 ? 0 : (double) total / count;
+        }
+
+        JSONObject toJSON(double unit) {
+            JSONObject statistic = new JSONObject();
+            statistic.put("count", count);
+            statistic.put("total", total / unit);
+            statistic.put("mean", getMean() / unit);
+            statistic.put("max", max / unit);
+            return statistic;
+        }
+    }
+}
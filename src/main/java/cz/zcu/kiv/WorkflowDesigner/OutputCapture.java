@@ -0,0 +1,142 @@
+package cz.zcu.kiv.WorkflowDesigner;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2018 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * This file hosts a bounded buffer for the standard output or error of a block.
+ * Once the limit is reached only the beginning and the most recent end of the text are kept, separated by a truncation marker.
+ **********************************************************************************************************************/
+
+public class OutputCapture {
+
+    //Default number of characters kept per stream
+    public static final int DEFAULT_LIMIT = 1 << 20;
+
+    /**
+     * Notified after text has been appended to a capture
+     */
+    public interface Listener {
+        void outputAppended(OutputCapture capture, CharSequence text);
+    }
+
+    private final int headLimit;
+    private final int tailLimit;
+    private final StringBuilder head = new StringBuilder();
+    private final StringBuilder tail = new StringBuilder();
+    private long truncated = 0;
+    private Listener listener;
+
+    /**
+     * @param limit - maximum number of characters kept, split evenly between the beginning and the end of the text
+     */
+    public OutputCapture(int limit) {
+        if (limit < 2) throw new IllegalArgumentException("Output limit must be at least 2 characters");
+        this.headLimit = limit / 2;
+        this.tailLimit = limit - headLimit;
+    }
+
+    public OutputCapture() {
+        this(DEFAULT_LIMIT);
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public OutputCapture append(CharSequence text) {
+        synchronized (this) {
+            int start = 0;
+            if (head.length() < headLimit) {
+                start = Math.min(text.length(), headLimit - head.length());
+                head.append(text, 0, start);
+            }
+            if (start < text.length()) {
+                tail.append(text, start, text.length());
+                //Trim in batches so that appending stays amortized constant time per character
+                if (tail.length() >= 2 * tailLimit) {
+                    int excess = tail.length() - tailLimit;
+                    tail.delete(0, excess);
+                    truncated += excess;
+                }
+            }
+        }
+        Listener listener = this.listener;
+        if (listener != null) listener.outputAppended(this, text);
+        return this;
+    }
+
+    /**
+     * @return number of characters dropped from the middle of the text so far
+     */
+    public synchronized long getTruncated() {
+        return truncated + Math.max(0, tail.length() - tailLimit);
+    }
+
+    /**
+     * @return captured text, with a marker in place of the characters that were dropped
+     */
+    @Override
+    public synchronized String toString() {
+        int skip = Math.max(0, tail.length() - tailLimit);
+        long dropped = truncated + skip;
+        StringBuilder text = new StringBuilder(head.length() + tail.length() - skip + 64);
+        text.append(head);
+        if (dropped > 0) {
+            text.append("\n... [").append(dropped).append(" characters truncated] ...\n");
+        }
+        text.append(tail, skip, tail.length());
+        return text.toString();
+    }
+
+    /**
+     * Copy a stream into this capture in bounded chunks on a background thread
+     * @param inputStream - stream to read until its end, it is closed afterwards
+     * @param charset - encoding of the stream
+     * @param name - name of the thread
+     * @return started thread, join it to wait for the end of the stream
+     */
+    public Thread pump(final InputStream inputStream, final Charset charset, String name) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                char[] buffer = new char[8192];
+                try (Reader reader = new InputStreamReader(inputStream, charset)) {
+                    int count;
+                    while ((count = reader.read(buffer)) >= 0) {
+                        append(new String(buffer, 0, count));
+                    }
+                }
+                catch (IOException e) {
+                    append("\n[Output stream closed: " + e.getMessage() + "]\n");
+                }
+            }
+        }, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+}
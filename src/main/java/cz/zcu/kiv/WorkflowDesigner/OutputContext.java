@@ -0,0 +1,63 @@
+package cz.zcu.kiv.WorkflowDesigner;
+
+import java.io.File;
+import java.io.IOException;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2018 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * This file hosts the context passed to output handlers persisting the output of a block.
+ **********************************************************************************************************************/
+
+public class OutputContext {
+
+    private final Workflow workflow;
+    private final File outputFolder;
+
+    public OutputContext(Workflow workflow, File outputFolder) {
+        this.workflow = workflow;
+        this.outputFolder = outputFolder;
+    }
+
+    /**
+     * Reserve a new file with a unique name in the output folder.
+     * Blocks completing at the same time, even in different workflows, never get the same file.
+     *
+     * @param prefix start of the file name
+     * @param suffix end of the file name
+     * @return empty file created in the output folder
+     */
+    public File createFile(String prefix, String suffix) throws IOException {
+        outputFolder.mkdirs();
+        return File.createTempFile(prefix, suffix, outputFolder);
+    }
+
+    /**
+     * @return workflow executing the block, its settings configure the built in handlers
+     */
+    public Workflow getWorkflow() {
+        return workflow;
+    }
+
+    public File getOutputFolder() {
+        return outputFolder;
+    }
+}
@@ -0,0 +1,46 @@
+package cz.zcu.kiv.WorkflowDesigner;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2018 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * This file hosts the interface of the handlers persisting block outputs of a type.
+ * Modules provide handlers for their own output types through META-INF/services, see OutputHandlerRegistry.
+ **********************************************************************************************************************/
+
+public interface OutputHandler<T> {
+
+    /**
+     * @return class of the outputs handled, outputs of its subclasses are handled too unless they have their own handler
+     */
+    Class<T> getOutputType();
+
+    /**
+     * Persist an output, large outputs are written to files created through the context
+     * @param output - Object returned by the block, never null
+     * @param context - Workflow and output folder of the block
+     * @return JSON with the "type" of the output and a "value" referencing what was written
+     */
+    JSONObject writeOutput(T output, OutputContext context) throws IOException;
+}
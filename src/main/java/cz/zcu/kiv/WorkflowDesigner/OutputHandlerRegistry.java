@@ -0,0 +1,244 @@
+package cz.zcu.kiv.WorkflowDesigner;
+
+import cz.zcu.kiv.WorkflowDesigner.Visualizations.JsonWriter;
+import cz.zcu.kiv.WorkflowDesigner.Visualizations.PlotlyGraphs.Graph;
+import cz.zcu.kiv.WorkflowDesigner.Visualizations.PlotlyGraphs.GraphDecimator;
+import cz.zcu.kiv.WorkflowDesigner.Visualizations.Table;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.json.JSONObject;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2018 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * This file hosts the registry resolving the handler of a block output from its class.
+ * Handlers of outputs are registered by type, resolved handlers are cached per output class.
+ **********************************************************************************************************************/
+
+public class OutputHandlerRegistry {
+
+    private static Log logger = LogFactory.getLog(OutputHandlerRegistry.class);
+
+    private final Map<Class<?>, OutputHandler<?>> handlers = new HashMap<>();
+    //Handler resolved for every output class seen so far
+    private final Map<Class<?>, OutputHandler<?>> resolved = new ConcurrentHashMap<>();
+
+    /**
+     * Registry of the built in handlers of strings, files, tables and graphs. Other outputs are written as strings.
+     */
+    public OutputHandlerRegistry() {
+        register(new ObjectHandler());
+        register(new StringHandler());
+        register(new FileHandler());
+        register(new TableHandler());
+        register(new GraphHandler());
+    }
+
+    /**
+     * Register the handlers listed in META-INF/services/cz.zcu.kiv.WorkflowDesigner.OutputHandler of the modules
+     * @param classLoader - loader of the block modules
+     */
+    public void loadServices(ClassLoader classLoader) {
+        Iterator<OutputHandler> iterator = ServiceLoader.load(OutputHandler.class, classLoader).iterator();
+        while (true) {
+            try {
+                if (!iterator.hasNext()) break;
+                OutputHandler<?> handler = iterator.next();
+                register(handler);
+                logger.info("Registered output handler " + handler.getClass().getName() + " for " + handler.getOutputType().getName());
+            }
+            catch (ServiceConfigurationError e) {
+                logger.error("Could not load output handler", e);
+            }
+        }
+    }
+
+    /**
+     * Register a handler, it replaces the handler registered for the same type
+     */
+    public synchronized void register(OutputHandler<?> handler) {
+        handlers.put(handler.getOutputType(), handler);
+        resolved.clear();
+    }
+
+    /**
+     * Handler of the closest registered superclass of a type, then of its interfaces, and finally of Object
+     * @param type - class of an output
+     * @return handler of the output
+     */
+    public OutputHandler<?> resolve(Class<?> type) {
+        OutputHandler<?> handler = resolved.get(type);
+        if (handler == null) {
+            synchronized (this) {
+                handler = lookup(type);
+                resolved.put(type, handler);
+            }
+        }
+        return handler;
+    }
+
+    private OutputHandler<?> lookup(Class<?> type) {
+        for (Class<?> superclass = type; superclass != null && superclass != Object.class; superclass = superclass.getSuperclass()) {
+            OutputHandler<?> handler = handlers.get(superclass);
+            if (handler != null) return handler;
+        }
+        //Interfaces breadth first, those of the class itself before those of its superclasses
+        Deque<Class<?>> interfaces = new ArrayDeque<>();
+        for (Class<?> superclass = type; superclass != null; superclass = superclass.getSuperclass()) {
+            interfaces.addAll(Arrays.asList(superclass.getInterfaces()));
+        }
+        Set<Class<?>> visited = new HashSet<>();
+        while (!interfaces.isEmpty()) {
+            Class<?> anInterface = interfaces.poll();
+            if (!visited.add(anInterface)) continue;
+            OutputHandler<?> handler = handlers.get(anInterface);
+            if (handler != null) return handler;
+            interfaces.addAll(Arrays.asList(anInterface.getInterfaces()));
+        }
+        return handlers.get(Object.class);
+    }
+
+    /**
+     * Persist an output with its handler
+     * @return JSON of the output, null if there is no output
+     */
+    @SuppressWarnings("unchecked")
+    public JSONObject writeOutput(Object output, OutputContext context) throws IOException {
+        if (output == null) return null;
+        OutputHandler<Object> handler = (OutputHandler<Object>) resolve(output.getClass());
+        return handler.writeOutput(output, context);
+    }
+
+    private static JSONObject output(String type, Object value) {
+        JSONObject jsonObject = new JSONObject();
+        jsonObject.put("type", type);
+        jsonObject.put("value", value);
+        return jsonObject;
+    }
+
+    private static JSONObject fileReference(String title, File file) {
+        JSONObject fileObject = new JSONObject();
+        fileObject.put("title", title);
+        fileObject.put("filename", file.getName());
+        return fileObject;
+    }
+
+    private static class ObjectHandler implements OutputHandler<Object> {
+        @Override
+        public Class<Object> getOutputType() {
+            return Object.class;
+        }
+
+        @Override
+        public JSONObject writeOutput(Object output, OutputContext context) {
+            return output("", output.toString());
+        }
+    }
+
+    private static class StringHandler implements OutputHandler<String> {
+        @Override
+        public Class<String> getOutputType() {
+            return String.class;
+        }
+
+        @Override
+        public JSONObject writeOutput(String output, OutputContext context) {
+            return output("STRING", output);
+        }
+    }
+
+    private static class FileHandler implements OutputHandler<File> {
+        @Override
+        public Class<File> getOutputType() {
+            return File.class;
+        }
+
+        @Override
+        public JSONObject writeOutput(File output, OutputContext context) throws IOException {
+            File destination = context.createFile("file_", "_" + output.getName());
+            Files.move(output.toPath(), destination.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            return output("FILE", fileReference(output.getName(), destination));
+        }
+    }
+
+    private static class TableHandler implements OutputHandler<Table> {
+        @Override
+        public Class<Table> getOutputType() {
+            return Table.class;
+        }
+
+        @Override
+        public JSONObject writeOutput(Table output, OutputContext context) throws IOException {
+            File file = context.createFile("table_", ".csv");
+            try (OutputStream outputStream = new FileOutputStream(file)) {
+                output.writeCSV(outputStream, Charset.defaultCharset());
+            }
+            JSONObject fileObject = fileReference(file.getName(), file);
+            int previewRows = context.getWorkflow().getPreviewRows();
+            if (previewRows > 0)
+                fileObject.put("preview", output.head(previewRows).toJSON());
+            return output("TABLE", fileObject);
+        }
+    }
+
+    private static class GraphHandler implements OutputHandler<Graph> {
+        @Override
+        public Class<Graph> getOutputType() {
+            return Graph.class;
+        }
+
+        @Override
+        public JSONObject writeOutput(Graph output, OutputContext context) throws IOException {
+            Workflow workflow = context.getWorkflow();
+            Graph graph = output;
+            JSONObject preview = null;
+            if (workflow.getPreviewPoints() > 0)
+                preview = new GraphDecimator(Math.max(workflow.getPreviewPoints(), 4), GraphDecimator.Method.LTTB).preview(graph).toJSON();
+            File sidecar = null;
+            GraphDecimator graphDecimator = workflow.getGraphDecimator();
+            if (graphDecimator != null && graphDecimator.exceedsBudget(graph)) {
+                //The full resolution graph is kept aside, only the decimated one is rendered
+                sidecar = context.createFile("graph_", ".bin");
+                try (OutputStream outputStream = new FileOutputStream(sidecar)) {
+                    new BinaryBlockDataCodec().encodeGraph(graph, outputStream);
+                }
+                graph = graphDecimator.decimate(graph);
+            }
+            File file = context.createFile("graph_", ".json");
+            try (JsonWriter writer = new JsonWriter(new FileOutputStream(file), Charset.defaultCharset())) {
+                graph.writeJSON(writer);
+            }
+            JSONObject fileObject = fileReference(file.getName(), file);
+            if (sidecar != null)
+                fileObject.put("fullResolution", sidecar.getName());
+            if (preview != null)
+                fileObject.put("preview", preview);
+            return output("GRAPH", fileObject);
+        }
+    }
+}
@@ -0,0 +1,484 @@
+package cz.zcu.kiv.WorkflowDesigner;
+
+import cz.zcu.kiv.WorkflowDesigner.Visualizations.ColumnarTable;
+import cz.zcu.kiv.WorkflowDesigner.Visualizations.PlotlyGraphs.Graph;
+import cz.zcu.kiv.WorkflowDesigner.Visualizations.PlotlyGraphs.Trace;
+import cz.zcu.kiv.WorkflowDesigner.Visualizations.Table;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.*;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2018 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * This file hosts the store holding the outputs of processed blocks until all the blocks consuming them have run.
+ * Outputs are released after their last consumer and large values can be spilled to memory mapped scratch files.
+ **********************************************************************************************************************/
+
+public class OutputStore implements Closeable {
+
+    private static Log logger = LogFactory.getLog(OutputStore.class);
+
+    private final ClassLoader classLoader;
+
+    //Remaining consumers of every output port, indexed by block id and output name
+    private final Map<String, Integer> consumers = new HashMap<>();
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    private long heapBudget = Long.MAX_VALUE;
+    private File spillDirectory;
+    private File scratchDirectory;
+    private long heapSize = 0;
+    private int spilled = 0;
+
+    /**
+     * Count the consumers of every output port from the edges of the workflow
+     * @param graph - Index of the edges of the workflow
+     * @param blocks - Blocks of the workflow indexed by id, blocks already processed consume nothing
+     * @param classLoader - classLoader resolving the classes of spilled values that were loaded by the bootstrap loader
+     */
+    public OutputStore(WorkflowGraph graph, Map<Integer, Block> blocks, ClassLoader classLoader) {
+        this.classLoader = classLoader;
+        for (int i = 0; i < graph.size(); i++) {
+            Block block = blocks.get(graph.getBlockId(i));
+            if (block.isProcessed() || block.getInput() == null) continue;
+            for (Map.Entry<String, InputField> field : graph.getFields(i).entrySet()) {
+                //Only fields matching an input of the block are ever assigned
+                if (!block.getInput().containsKey(field.getKey())) continue;
+                InputField inputField = field.getValue();
+                for (int j = 0; j < inputField.getSourceParam().size(); j++) {
+                    String key = key(inputField.getSourceBlock().get(j), inputField.getSourceParam().get(j));
+                    Integer count = consumers.get(key);
+                    consumers.put(key, count == null ? 1 : count + 1);
+                }
+            }
+        }
+    }
+
+    private static String key(int blockId, String output) {
+        return blockId + ":" + output;
+    }
+
+    /**
+     * Move the outputs of a processed block into the store.
+     * The output fields of the block are cleared, so values nobody consumes are released immediately.
+     */
+    public void collect(int blockId, Block block) throws IllegalAccessException, IOException {
+        if (block.getOutput() == null) return;
+        for (Map.Entry<String, Data> output : block.getOutput().entrySet()) {
+            BlockMetadata.Accessor f = block.getMetadata().getOutputs().get(output.getValue().getName());
+            if (f == null) continue;
+            put(blockId, output.getKey(), f.get(block.getContext()));
+            if (!f.getFieldType().isPrimitive()) f.set(block.getContext(), null);
+        }
+    }
+
+    /**
+     * Count the inputs of a block as consumed without reading them, used when its result is known without processing it
+     */
+    public synchronized void skipInputs(Block block, Map<String, InputField> fields) {
+        if (block.getInput() == null) return;
+        for (String name : block.getInput().keySet()) {
+            InputField field = fields.get(name);
+            if (field == null) continue;
+            for (int i = 0; i < field.getSourceParam().size(); i++) {
+                String key = key(field.getSourceBlock().get(i), field.getSourceParam().get(i));
+                Entry entry = entries.get(key);
+                if (entry == null || --entry.remaining > 0) continue;
+                entries.remove(key);
+                if (entry.file == null) heapSize -= entry.size;
+                if (entry.readers == 0) entry.release();
+            }
+        }
+    }
+
+    /**
+     * Clear the input fields of a processed block, the store keeps the values still needed by other blocks
+     */
+    public void releaseInputs(Block block) throws IllegalAccessException {
+        for (BlockMetadata.Accessor f : block.getMetadata().getInputs().values()) {
+            if (!f.getFieldType().isPrimitive()) f.set(block.getContext(), null);
+        }
+    }
+
+    /**
+     * Keep the value of an output port until all its consumers have taken it
+     */
+    public synchronized void put(int blockId, String output, Object value) throws IOException {
+        String key = key(blockId, output);
+        Integer count = consumers.get(key);
+        if (count == null || count == 0) return;
+
+        //Opaque objects are only measured when they may have to be spilled
+        Entry entry = new Entry(value, estimateSize(value, heapBudget != Long.MAX_VALUE), count);
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            if (previous.file == null) heapSize -= previous.size;
+            previous.release();
+        }
+        heapSize += entry.size;
+        spill();
+    }
+
+    /**
+     * @return true if the store holds the value of an output port
+     */
+    public synchronized boolean contains(int blockId, String output) {
+        return entries.containsKey(key(blockId, output));
+    }
+
+    /**
+     * Take the value of an output port for one of its consumers, the value is released after its last consumer.
+     * Spilled values are read back from their scratch file, every consumer then gets its own copy.
+     */
+    public Object take(int blockId, String output) throws IOException, ClassNotFoundException {
+        String key = key(blockId, output);
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry == null) throw new IllegalStateException("No value stored for output " + key);
+            if (--entry.remaining == 0) {
+                entries.remove(key);
+                if (entry.file == null) heapSize -= entry.size;
+            }
+            if (entry.file == null) return entry.value;
+            entry.readers++;
+        }
+        try {
+            return entry.read();
+        }
+        finally {
+            synchronized (this) {
+                entry.readers--;
+                if (entry.remaining == 0 && entry.readers == 0) entry.release();
+            }
+        }
+    }
+
+    /**
+     * Spill the largest resident values until the estimated heap size fits the budget
+     */
+    private void spill() throws IOException {
+        while (heapSize > heapBudget) {
+            Entry largest = null;
+            for (Entry entry : entries.values()) {
+                if (entry.file == null && entry.value instanceof Serializable && entry.size > 0
+                        && (largest == null || entry.size > largest.size)) {
+                    largest = entry;
+                }
+            }
+            if (largest == null) return;
+            largest.write(getScratchDirectory());
+            heapSize -= largest.size;
+            spilled++;
+        }
+    }
+
+    private File getScratchDirectory() throws IOException {
+        if (scratchDirectory == null) {
+            scratchDirectory = spillDirectory == null
+                    ? Files.createTempDirectory("outputs_").toFile()
+                    : Files.createTempDirectory(spillDirectory.toPath(), "outputs_").toFile();
+        }
+        return scratchDirectory;
+    }
+
+    /**
+     * Release all values and delete the scratch files
+     */
+    @Override
+    public synchronized void close() {
+        for (Entry entry : entries.values()) {
+            if (entry.readers == 0) entry.release();
+        }
+        entries.clear();
+        heapSize = 0;
+        if (scratchDirectory != null) FileUtils.deleteQuietly(scratchDirectory);
+        scratchDirectory = null;
+    }
+
+    public synchronized long getHeapBudget() {
+        return heapBudget;
+    }
+
+    /**
+     * @param heapBudget - Estimated number of bytes of outputs kept on the heap before the largest are spilled to disk
+     */
+    public synchronized void setHeapBudget(long heapBudget) {
+        if (heapBudget < 0) throw new IllegalArgumentException("Heap budget must not be negative");
+        this.heapBudget = heapBudget;
+    }
+
+    public synchronized File getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    /**
+     * @param spillDirectory - Directory to create scratch files in, the system temporary directory if null
+     */
+    public synchronized void setSpillDirectory(File spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * @return estimated number of bytes of the values kept on the heap
+     */
+    public synchronized long getHeapSize() {
+        return heapSize;
+    }
+
+    /**
+     * @return number of values spilled to disk so far
+     */
+    public synchronized int getSpilledCount() {
+        return spilled;
+    }
+
+    /**
+     * @return number of values currently held by the store
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Rough estimate of the heap occupied by a value, collections are extrapolated from their first element
+     * @param measure - measure objects of other classes by the size of their serialized form, else count them as 16 bytes
+     */
+    static long estimateSize(Object value, boolean measure) {
+        if (value == null) return 0;
+        if (value instanceof CharSequence) return 40 + 2L * ((CharSequence) value).length();
+        if (value instanceof Number || value instanceof Boolean || value instanceof Character) return 16;
+        Class<?> type = value.getClass();
+        if (type.isArray()) {
+            int length = Array.getLength(value);
+            Class<?> component = type.getComponentType();
+            if (component == boolean.class || component == byte.class) return 16 + length;
+            if (component == char.class || component == short.class) return 16 + 2L * length;
+            if (component == int.class || component == float.class) return 16 + 4L * length;
+            if (component == long.class || component == double.class) return 16 + 8L * length;
+            return 16 + length * (8 + (length == 0 ? 0 : estimateSize(Array.get(value, 0), measure)));
+        }
+        if (value instanceof Collection) {
+            Collection<?> collection = (Collection<?>) value;
+            if (collection.isEmpty()) return 32;
+            return 32 + collection.size() * (16 + estimateSize(collection.iterator().next(), measure));
+        }
+        if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            if (map.isEmpty()) return 48;
+            Map.Entry<?, ?> first = map.entrySet().iterator().next();
+            return 48 + map.size() * (48 + estimateSize(first.getKey(), measure) + estimateSize(first.getValue(), measure));
+        }
+        if (value instanceof ColumnarTable) {
+            ColumnarTable table = (ColumnarTable) value;
+            long size = 64 + estimateSize(table.getColumnHeaders(), measure);
+            for (ColumnarTable.Column column : table.getColumns()) {
+                if (column instanceof ColumnarTable.StringColumn) {
+                    ColumnarTable.StringColumn strings = (ColumnarTable.StringColumn) column;
+                    String first = strings.size() == 0 ? null : strings.get(0);
+                    size += 32 + 4L * strings.size() + strings.getDictionarySize() * (64 + estimateSize(first, measure));
+                }
+                else size += 32 + 8L * column.size();
+            }
+            return size;
+        }
+        if (value instanceof Table) {
+            Table table = (Table) value;
+            return 64 + estimateSize(table.getColumnHeaders(), measure) + estimateSize(table.getRowHeaders(), measure)
+                    + estimateSize(table.getRows(), measure);
+        }
+        if (value instanceof Graph) {
+            long size = 64;
+            List<Trace> traces = ((Graph) value).getTraces();
+            if (traces != null) {
+                for (Trace trace : traces) {
+                    size += trace == null ? 8 : 8 + trace.estimateSize();
+                }
+            }
+            return size;
+        }
+        return measure && value instanceof Serializable ? measureSerializedSize(value) : 16;
+    }
+
+    /**
+     * @return number of bytes of the serialized form of a value, 16 if it cannot be serialized
+     */
+    private static long measureSerializedSize(Object value) {
+        CountingOutputStream counter = new CountingOutputStream(NullOutputStream.NULL_OUTPUT_STREAM);
+        try (ObjectOutputStream outputStream = new ObjectOutputStream(counter)) {
+            outputStream.writeObject(value);
+        }
+        catch (IOException e) {
+            logger.debug("Could not measure output of class " + value.getClass().getName(), e);
+            return 16;
+        }
+        return counter.getByteCount();
+    }
+
+    /**
+     * Value of an output port, either on the heap or in a scratch file
+     */
+    private class Entry {
+        private Object value;
+        private final long size;
+        private int remaining;
+        private int readers = 0;
+        private File file;
+        //Loaders of the classes of a spilled value, values of module classes are restored with the same classes
+        private final List<ClassLoader> classLoaders = new ArrayList<>();
+
+        Entry(Object value, long size, int remaining) {
+            this.value = value;
+            this.size = size;
+            this.remaining = remaining;
+        }
+
+        //Called with the store locked
+        void write(File directory) throws IOException {
+            File file = File.createTempFile("output_", ".ser", directory);
+            try (ObjectOutputStream outputStream = new LoaderObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)), classLoaders)) {
+                outputStream.writeObject(value);
+            }
+            catch (IOException e) {
+                FileUtils.deleteQuietly(file);
+                throw e;
+            }
+            this.file = file;
+            this.value = null;
+            logger.info("Spilled output of about " + size + " bytes to " + file);
+        }
+
+        Object read() throws IOException, ClassNotFoundException {
+            ByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            try (ObjectInputStream inputStream = new LoaderObjectInputStream(new ByteBufferInputStream(buffer), classLoaders, classLoader)) {
+                return inputStream.readObject();
+            }
+        }
+
+        //Called with the store locked
+        void release() {
+            value = null;
+            if (file != null) FileUtils.deleteQuietly(file);
+        }
+    }
+
+    /**
+     * Sequential stream over a buffer, used to deserialize straight from a mapped file
+     */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) return 0;
+            if (!buffer.hasRemaining()) return -1;
+            length = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, length);
+            return length;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    /**
+     * Records the classloader of every class of a spilled value next to its class descriptor
+     */
+    private static class LoaderObjectOutputStream extends ObjectOutputStream {
+        private final List<ClassLoader> classLoaders;
+
+        LoaderObjectOutputStream(OutputStream outputStream, List<ClassLoader> classLoaders) throws IOException {
+            super(outputStream);
+            this.classLoaders = classLoaders;
+        }
+
+        @Override
+        protected void annotateClass(Class<?> type) throws IOException {
+            ClassLoader loader = type.getClassLoader();
+            int index = -1;
+            if (loader != null) {
+                index = classLoaders.indexOf(loader);
+                if (index < 0) {
+                    index = classLoaders.size();
+                    classLoaders.add(loader);
+                }
+            }
+            writeInt(index);
+        }
+    }
+
+    /**
+     * Resolves the classes of spilled values in the classloaders they were loaded by, classes of the bootstrap
+     * loader in the classloader of the workflow
+     */
+    private static class LoaderObjectInputStream extends ObjectInputStream {
+        private final List<ClassLoader> classLoaders;
+        private final ClassLoader classLoader;
+
+        LoaderObjectInputStream(InputStream inputStream, List<ClassLoader> classLoaders, ClassLoader classLoader) throws IOException {
+            super(inputStream);
+            this.classLoaders = classLoaders;
+            this.classLoader = classLoader;
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            int index = readInt();
+            if (index >= 0) {
+                return Class.forName(desc.getName(), false, classLoaders.get(index));
+            }
+            if (classLoader != null) {
+                try {
+                    return Class.forName(desc.getName(), false, classLoader);
+                }
+                catch (ClassNotFoundException e) {
+                    //Fall back to the default resolution, which also handles primitive types
+                }
+            }
+            return super.resolveClass(desc);
+        }
+    }
+}
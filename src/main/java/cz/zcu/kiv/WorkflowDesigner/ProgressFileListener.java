@@ -0,0 +1,166 @@
+package cz.zcu.kiv.WorkflowDesigner;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2018 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * This file hosts the listener that saves the progress of a workflow to a JSON file.
+ * Changes are coalesced and every save atomically replaces the file with a complete snapshot.
+ **********************************************************************************************************************/
+
+public class ProgressFileListener implements WorkflowListener {
+
+    private static Log logger = LogFactory.getLog(ProgressFileListener.class);
+
+    private final File file;
+    private final long interval;
+    private final int batchSize;
+
+    private JSONArray blocksArray;
+
+    //Live output of running blocks whose output changed since the last save
+    private final Map<Integer, OutputCapture[]> outputs = new HashMap<>();
+    private final Set<Integer> changedOutputs = new HashSet<>();
+    private int pendingBlocks = 0;
+    private boolean pending = false;
+    private Timer timer;
+
+    /**
+     * The file is rewritten once the interval has passed since the first unsaved change, or as soon as the batch size
+     * of blocks has completed, whichever comes first. The final state is saved when the workflow completes.
+     *
+     * @param file - File to save the JSON blocks of the workflow into
+     * @param interval - Maximum time in milliseconds a change waits before the file is saved
+     * @param batchSize - Number of completed blocks after which the file is saved without waiting
+     */
+    public ProgressFileListener(File file, long interval, int batchSize) {
+        this.file = file.getAbsoluteFile();
+        this.interval = interval;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public synchronized void onWorkflowStarted(JSONArray blocksArray) {
+        this.blocksArray = blocksArray;
+    }
+
+    @Override
+    public synchronized void onBlockStarted(int blockId, Block block, OutputCapture stdOut, OutputCapture stdErr) {
+        outputs.put(blockId, new OutputCapture[]{stdOut, stdErr});
+    }
+
+    @Override
+    public synchronized void onBlockOutput(int blockId, OutputCapture capture, CharSequence text) {
+        changedOutputs.add(blockId);
+        schedule();
+    }
+
+    @Override
+    public void onBlockCompleted(int blockId, JSONObject blockObject, Object output, BlockTimings timings) {
+        blockFinished(blockId);
+    }
+
+    @Override
+    public void onBlockFailed(int blockId, JSONObject blockObject, BlockTimings timings) {
+        blockFinished(blockId);
+    }
+
+    private synchronized void blockFinished(int blockId) {
+        //The workflow has recorded the complete output in the JSON of the block
+        outputs.remove(blockId);
+        changedOutputs.remove(blockId);
+        if (++pendingBlocks >= batchSize) save();
+        else schedule();
+    }
+
+    @Override
+    public synchronized void onWorkflowCompleted(JSONArray blocksArray, boolean error) {
+        if (timer != null) timer.cancel();
+        timer = null;
+        if (pending) save();
+    }
+
+    private void schedule() {
+        if (pending) return;
+        pending = true;
+        if (timer == null) timer = new Timer("workflow-progress", true);
+        timer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, interval);
+    }
+
+    /**
+     * Save the progress now if anything changed since the last save
+     */
+    public synchronized void flush() {
+        if (pending) save();
+    }
+
+    private void save() {
+        pending = false;
+        pendingBlocks = 0;
+        if (blocksArray == null) return;
+        try {
+            write();
+        }
+        catch (IOException e) {
+            logger.warn("Could not save progress of the workflow to " + file, e);
+        }
+    }
+
+    private void write() throws IOException {
+        File snapshot = new File(file.getParentFile(), file.getName() + ".tmp");
+        synchronized (blocksArray) {
+            for (Integer blockId : changedOutputs) {
+                OutputCapture[] captures = outputs.get(blockId);
+                JSONObject block = Workflow.getBlockById(blocksArray, blockId);
+                if (captures == null || block == null) continue;
+                block.put("stdout", captures[0].toString());
+                block.put("stderr", captures[1].toString());
+            }
+            changedOutputs.clear();
+
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(snapshot), Charset.defaultCharset()))) {
+                blocksArray.write(writer, 4, 0);
+            }
+        }
+        try {
+            Files.move(snapshot.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException e) {
+            Files.move(snapshot.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
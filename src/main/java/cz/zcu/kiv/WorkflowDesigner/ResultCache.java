@@ -0,0 +1,419 @@
+package cz.zcu.kiv.WorkflowDesigner;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.*;
+import java.lang.reflect.Array;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2018 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * This file hosts an on-disk cache of block results shared by repeated runs of workflows.
+ * Results are addressed by a hash of the block, its module, its properties and the keys of its upstream results.
+ **********************************************************************************************************************/
+
+public class ResultCache {
+
+    private static Log logger = LogFactory.getLog(ResultCache.class);
+
+    private static final int FORMAT = 1;
+    private static final String SUFFIX = ".result";
+
+    private final File directory;
+    private final BlockDataCodec codec = new BinaryBlockDataCodec();
+    private long maxSize;
+    private long size = 0;
+    private int hits = 0;
+    private int misses = 0;
+
+    //Sizes of the cached results in least recently used order
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Open a cache directory, results cached by earlier runs are reused
+     * @param directory - Directory holding the cached results, it is created if needed
+     * @param maxSize - Maximum number of bytes of results kept, the least recently used ones are deleted first
+     */
+    public ResultCache(File directory, long maxSize) throws IOException {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create cache directory " + directory);
+        }
+        File[] files = directory.listFiles();
+        if (files == null) throw new IOException("Could not list cache directory " + directory);
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File o1, File o2) {
+                return Long.compare(o1.lastModified(), o2.lastModified());
+            }
+        });
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(SUFFIX)) {
+                entries.put(name.substring(0, name.length() - SUFFIX.length()), file.length());
+                size += file.length();
+            }
+            else if (name.endsWith(".tmp")) {
+                //Left over by an interrupted write
+                FileUtils.deleteQuietly(file);
+            }
+        }
+        evict();
+    }
+
+    /**
+     * Compute the key of the result of a block
+     * @param block - Block with its properties assigned
+     * @param fields - Input fields of the block
+     * @param upstreamKeys - Keys of the results of processed blocks indexed by block id
+     * @param fingerprints - Fingerprints identifying file properties by their content, null to identify them by their path
+     * @return key of the result, null if the result of a source block has no key or a property cannot be keyed
+     */
+    public String key(Block block, Map<String, InputField> fields, Map<Integer, String> upstreamKeys, FileFingerprints fingerprints) throws IOException {
+        MessageDigest digest = newDigest();
+        update(digest, block.getName());
+        update(digest, block.getModule());
+        update(digest, block.getContext().getClass().getName());
+
+        //A rebuilt module JAR invalidates the results of its blocks
+        File moduleJar = block.getModuleJar();
+        if (moduleJar != null) {
+            update(digest, moduleJar.getCanonicalPath() + ":" + moduleJar.length() + ":" + moduleJar.lastModified());
+        }
+
+        BlockMetadata metadata = block.getMetadata();
+        for (String name : new TreeSet<>(metadata.getProperties().keySet())) {
+            update(digest, name);
+            Object value = block.getPropertyValue(metadata.getProperties().get(name));
+            String valueKey = valueKey(value, fingerprints);
+            if (valueKey == null) {
+                logger.debug("Not caching " + block.getName() + ", property " + name + " of class " + value.getClass().getName() + " has no deterministic key");
+                return null;
+            }
+            update(digest, valueKey);
+        }
+
+        if (block.getInput() != null) {
+            for (String name : new TreeSet<>(block.getInput().keySet())) {
+                InputField field = fields.get(name);
+                if (field == null) continue;
+                update(digest, name);
+                for (int i = 0; i < field.getSourceParam().size(); i++) {
+                    String upstreamKey = upstreamKeys.get(field.getSourceBlock().get(i));
+                    if (upstreamKey == null) return null;
+                    update(digest, upstreamKey + ":" + field.getSourceParam().get(i));
+                }
+            }
+        }
+
+        return FileFingerprints.toHex(digest.digest());
+    }
+
+    /**
+     * Key of a property value, built from its class and content. Files are keyed by their path and the fingerprint of
+     * their content, also inside collections and arrays. Unordered sets and maps are keyed by the sorted keys of their
+     * elements, so the key does not depend on their iteration order.
+     * @return key of the value, null if the value has no deterministic key
+     */
+    private static String valueKey(Object value, FileFingerprints fingerprints) throws IOException {
+        MessageDigest digest = newDigest();
+        if (value == null) {
+            update(digest, null);
+        }
+        else if (value instanceof File) {
+            update(digest, "File");
+            //Both the file and its content, so different files with equal content keep apart
+            update(digest, ((File) value).getCanonicalPath());
+            if (fingerprints != null) update(digest, fingerprints.fingerprint((File) value));
+        }
+        else if (value instanceof CharSequence || value instanceof Number || value instanceof Boolean
+                || value instanceof Character || value instanceof Enum) {
+            //Numbers of other classes may not have a stable string form
+            if (value instanceof Number && !value.getClass().getName().startsWith("java.")) return null;
+            update(digest, value.getClass().getName());
+            update(digest, value.toString());
+        }
+        else if (value.getClass().isArray() || value instanceof List) {
+            List<?> elements = value instanceof List ? (List<?>) value : arrayElements(value);
+            update(digest, value.getClass().isArray() ? value.getClass().getName() : "List");
+            for (Object element : elements) {
+                String elementKey = valueKey(element, fingerprints);
+                if (elementKey == null) return null;
+                update(digest, elementKey);
+            }
+        }
+        else if (value instanceof Set) {
+            List<String> elementKeys = new ArrayList<>();
+            for (Object element : (Set<?>) value) {
+                String elementKey = valueKey(element, fingerprints);
+                if (elementKey == null) return null;
+                elementKeys.add(elementKey);
+            }
+            Collections.sort(elementKeys);
+            update(digest, "Set");
+            for (String elementKey : elementKeys) update(digest, elementKey);
+        }
+        else if (value instanceof Map) {
+            List<String> entryKeys = new ArrayList<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                String key = valueKey(entry.getKey(), fingerprints);
+                String entryValue = valueKey(entry.getValue(), fingerprints);
+                if (key == null || entryValue == null) return null;
+                entryKeys.add(key + ":" + entryValue);
+            }
+            Collections.sort(entryKeys);
+            update(digest, "Map");
+            for (String entryKey : entryKeys) update(digest, entryKey);
+        }
+        else return null;
+        return FileFingerprints.toHex(digest.digest());
+    }
+
+    private static List<Object> arrayElements(Object array) {
+        int length = Array.getLength(array);
+        List<Object> elements = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+            elements.add(Array.get(array, i));
+        }
+        return elements;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+        int length = value == null ? -1 : bytes.length;
+        digest.update(new byte[]{(byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8), (byte) length});
+        digest.update(bytes);
+    }
+
+    /**
+     * Look up a cached result
+     * @param classLoader - classLoader resolving the classes of opaque outputs, usually that of the block
+     * @return cached result, null if there is none
+     */
+    public Entry get(String key, ClassLoader classLoader) {
+        File file = getFile(key);
+        synchronized (this) {
+            if (entries.get(key) == null) {
+                misses++;
+                return null;
+            }
+            hits++;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FORMAT) throw new IOException("Unknown format");
+            String stdOut = readString(in);
+            String stdErr = readString(in);
+            BlockData blockData = new BinaryBlockDataCodec(classLoader).decode(in);
+            file.setLastModified(System.currentTimeMillis());
+            return new Entry(blockData.getOutput(), blockData.getProcessOutput(), stdOut, stdErr);
+        }
+        catch (IOException e) {
+            logger.warn("Discarding unreadable cached result " + file, e);
+            remove(key);
+            return null;
+        }
+    }
+
+    /**
+     * Cache the result of a processed block.
+     * Results referring to files are not cached, the workflow moves output files into its output folder.
+     *
+     * @param key - key computed for the block before it was processed
+     * @param block - processed block holding its outputs
+     * @param processOutput - object returned by the block
+     * @return true if the result was cached
+     */
+    public boolean put(String key, Block block, Object processOutput, String stdOut, String stdErr) {
+        BlockData blockData = new BlockData(block.getName());
+        blockData.setProcessOutput(processOutput);
+        for (BlockMetadata.Accessor f : block.getMetadata().getOutputs().values()) {
+            blockData.getOutput().put(f.getName(), f.get(block.getContext()));
+        }
+        if (containsFile(processOutput) || containsFile(blockData.getOutput().values())) return false;
+
+        File file = getFile(key);
+        File temporary = new File(directory, key + "." + Thread.currentThread().getId() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+                out.writeInt(FORMAT);
+                writeString(out, stdOut);
+                writeString(out, stdErr);
+                codec.encode(blockData, out);
+            }
+            try {
+                Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        catch (IOException e) {
+            //Typically outputs that cannot be serialized
+            logger.info("Not caching the result of a " + block.getName() + " block: " + e.getMessage());
+            FileUtils.deleteQuietly(temporary);
+            return false;
+        }
+
+        synchronized (this) {
+            Long previous = entries.put(key, file.length());
+            if (previous != null) size -= previous;
+            size += file.length();
+            evict();
+        }
+        return true;
+    }
+
+    private static boolean containsFile(Object value) {
+        if (value instanceof File) return true;
+        if (value instanceof Collection) {
+            for (Object element : (Collection<?>) value) {
+                if (containsFile(element)) return true;
+            }
+        }
+        return false;
+    }
+
+    private synchronized void evict() {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            FileUtils.deleteQuietly(getFile(eldest.getKey()));
+            size -= eldest.getValue();
+            iterator.remove();
+        }
+    }
+
+    private synchronized void remove(String key) {
+        Long length = entries.remove(key);
+        if (length != null) size -= length;
+        FileUtils.deleteQuietly(getFile(key));
+    }
+
+    /**
+     * Delete all cached results
+     */
+    public synchronized void clear() {
+        for (String key : entries.keySet()) {
+            FileUtils.deleteQuietly(getFile(key));
+        }
+        entries.clear();
+        size = 0;
+    }
+
+    private File getFile(String key) {
+        return new File(directory, key + SUFFIX);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public synchronized long getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+        evict();
+    }
+
+    /**
+     * @return number of bytes of the cached results
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public synchronized int getHitCount() {
+        return hits;
+    }
+
+    public synchronized int getMissCount() {
+        return misses;
+    }
+
+    /**
+     * Cached result of a block
+     */
+    public static class Entry {
+        private final Map<String, Object> outputs;
+        private final Object processOutput;
+        private final String stdOut;
+        private final String stdErr;
+
+        Entry(Map<String, Object> outputs, Object processOutput, String stdOut, String stdErr) {
+            this.outputs = outputs;
+            this.processOutput = processOutput;
+            this.stdOut = stdOut;
+            this.stdErr = stdErr;
+        }
+
+        /**
+         * @return values of the output fields indexed by output name
+         */
+        public Map<String, Object> getOutputs() {
+            return outputs;
+        }
+
+        public Object getProcessOutput() {
+            return processOutput;
+        }
+
+        public String getStdOut() {
+            return stdOut;
+        }
+
+        public String getStdErr() {
+            return stdErr;
+        }
+    }
+}
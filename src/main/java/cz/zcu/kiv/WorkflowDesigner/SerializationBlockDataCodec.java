@@ -0,0 +1,59 @@
+package cz.zcu.kiv.WorkflowDesigner;
+
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.apache.commons.lang3.SerializationException;
+import org.apache.commons.lang3.SerializationUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2018 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * This file hosts the BlockData codec based on default Java serialization.
+ * It supports any Serializable value and is kept for modules that exchange types the binary codec does not know.
+ **********************************************************************************************************************/
+
+public class SerializationBlockDataCodec implements BlockDataCodec {
+
+    @Override
+    public void encode(BlockData blockData, OutputStream outputStream) throws IOException {
+        try {
+            //SerializationUtils closes the stream it is given
+            SerializationUtils.serialize(blockData, new CloseShieldOutputStream(outputStream));
+        }
+        catch (SerializationException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public BlockData decode(InputStream inputStream) throws IOException {
+        try {
+            return SerializationUtils.deserialize(new CloseShieldInputStream(inputStream));
+        }
+        catch (SerializationException e) {
+            throw new IOException(e);
+        }
+    }
+}
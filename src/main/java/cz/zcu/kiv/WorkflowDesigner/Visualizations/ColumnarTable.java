@@ -0,0 +1,382 @@
+package cz.zcu.kiv.WorkflowDesigner.Visualizations;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.*;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2018 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * This file hosts a Table variant storing its cells in typed columns instead of lists of strings.
+ * Numbers are kept in primitive arrays and strings are dictionary encoded, rows are only formatted when they are read.
+ **********************************************************************************************************************/
+
+public class ColumnarTable extends Table {
+
+    private final List<Column> columns = new ArrayList<>();
+
+    //Either empty for a table without a header row or one header per column
+    private final List<String> headers = new ArrayList<>();
+
+    public ColumnarTable() {
+    }
+
+    /**
+     * Add a column of floating point numbers
+     * @param header - column header
+     * @return the new column, values are appended to it directly
+     */
+    public DoubleColumn addDoubleColumn(String header) {
+        return addColumn(header, new DoubleColumn());
+    }
+
+    /**
+     * Add a column of integral numbers
+     * @param header - column header
+     * @return the new column, values are appended to it directly
+     */
+    public LongColumn addLongColumn(String header) {
+        return addColumn(header, new LongColumn());
+    }
+
+    /**
+     * Add a column of dictionary encoded strings, suited to columns with few distinct values
+     * @param header - column header
+     * @return the new column, values are appended to it directly
+     */
+    public StringColumn addStringColumn(String header) {
+        return addColumn(header, new StringColumn());
+    }
+
+    private <C extends Column> C addColumn(String header, C column) {
+        if (getRowCount() > 0) throw new IllegalStateException("Columns have to be added before rows");
+        //Columns created from rows alone have no headers yet
+        while (headers.size() < columns.size()) headers.add("");
+        columns.add(column);
+        headers.add(header);
+        return column;
+    }
+
+    public List<Column> getColumns() {
+        return Collections.unmodifiableList(columns);
+    }
+
+    public Column getColumn(int index) {
+        return columns.get(index);
+    }
+
+    /**
+     * Append a row, every value is appended to the column at the same position
+     * @param values - Number values for numeric columns, any value for string columns
+     */
+    public void addRow(Object... values) {
+        if (values.length != columns.size()) {
+            throw new IllegalArgumentException("Expected " + columns.size() + " values but got " + values.length);
+        }
+        for (int i = 0; i < values.length; i++) {
+            columns.get(i).appendValue(values[i]);
+        }
+    }
+
+    /**
+     * @return number of complete rows, columns appended in chunks may temporarily be longer
+     */
+    public int getRowCount() {
+        if (columns.isEmpty()) return 0;
+        int count = Integer.MAX_VALUE;
+        for (Column column : columns) {
+            count = Math.min(count, column.size());
+        }
+        return count;
+    }
+
+    /**
+     * @return read only view formatting the cells of a row whenever it is accessed
+     */
+    @Override
+    public List<List<String>> getRows() {
+        return new AbstractList<List<String>>() {
+            @Override
+            public List<String> get(final int row) {
+                if (row < 0 || row >= size()) throw new IndexOutOfBoundsException("Row " + row);
+                return new AbstractList<String>() {
+                    @Override
+                    public String get(int column) {
+                        return columns.get(column).getString(row);
+                    }
+
+                    @Override
+                    public int size() {
+                        return columns.size();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return getRowCount();
+            }
+        };
+    }
+
+    /**
+     * Replace the rows, the columns are rebuilt from the cells. A column becomes numeric if all of its cells are numbers
+     * formatted as the column formats them, so that every cell reads back unchanged, otherwise it holds strings.
+     * @param rows - rows with one cell per column, null to remove all rows
+     */
+    @Override
+    public void setRows(List<List<String>> rows) {
+        if (rows == null) rows = Collections.emptyList();
+        int width = rows.isEmpty() ? columns.size() : rows.get(0).size();
+        for (List<String> row : rows) {
+            if (row.size() != width) throw new IllegalArgumentException("Rows of a ColumnarTable need the same number of cells");
+        }
+        if (!headers.isEmpty() && width != headers.size()) {
+            throw new IllegalArgumentException("Expected rows of " + headers.size() + " cells but got " + width);
+        }
+        List<Column> rebuilt = new ArrayList<>(width);
+        for (int i = 0; i < width; i++) {
+            rebuilt.add(buildColumn(rows, i));
+        }
+        columns.clear();
+        columns.addAll(rebuilt);
+    }
+
+    private static Column buildColumn(List<List<String>> rows, int index) {
+        boolean longs = !rows.isEmpty();
+        boolean doubles = !rows.isEmpty();
+        for (List<String> row : rows) {
+            String cell = row.get(index);
+            longs = longs && isLong(cell);
+            doubles = doubles && isDouble(cell);
+            if (!longs && !doubles) break;
+        }
+        if (longs) {
+            LongColumn column = new LongColumn();
+            for (List<String> row : rows) column.append(Long.parseLong(row.get(index)));
+            return column;
+        }
+        if (doubles) {
+            DoubleColumn column = new DoubleColumn();
+            for (List<String> row : rows) column.append(Double.parseDouble(row.get(index)));
+            return column;
+        }
+        StringColumn column = new StringColumn();
+        for (List<String> row : rows) column.append(row.get(index));
+        return column;
+    }
+
+    private static boolean isLong(String cell) {
+        try {
+            return cell != null && String.valueOf(Long.parseLong(cell)).equals(cell);
+        }
+        catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static boolean isDouble(String cell) {
+        try {
+            return cell != null && String.valueOf(Double.parseDouble(cell)).equals(cell);
+        }
+        catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return read only list of the column headers, empty if the table has no header row
+     */
+    @Override
+    public List<String> getColumnHeaders() {
+        return Collections.unmodifiableList(headers);
+    }
+
+    /**
+     * Replace the column headers. The columns are renamed, a table without rows gets a new empty column per header.
+     * @param columnHeaders - one header per column, null or empty to remove the header row
+     */
+    @Override
+    public void setColumnHeaders(List<String> columnHeaders) {
+        if (columnHeaders == null || columnHeaders.isEmpty()) {
+            headers.clear();
+            return;
+        }
+        if (columnHeaders.size() != columns.size()) {
+            if (getRowCount() > 0) {
+                throw new IllegalArgumentException("Expected " + columns.size() + " column headers but got " + columnHeaders.size());
+            }
+            columns.clear();
+            for (int i = 0; i < columnHeaders.size(); i++) {
+                columns.add(new StringColumn());
+            }
+        }
+        headers.clear();
+        headers.addAll(columnHeaders);
+    }
+
+    /**
+     * A typed column of the table
+     */
+    public static abstract class Column implements Serializable {
+        protected int size = 0;
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @return cell formatted as it appears in the table
+         */
+        public abstract String getString(int row);
+
+        abstract void appendValue(Object value);
+
+        protected void checkRow(int row) {
+            if (row < 0 || row >= size) throw new IndexOutOfBoundsException("Row " + row);
+        }
+
+        protected static int grow(int capacity, int required) {
+            return Math.max(required, capacity + (capacity >> 1) + 16);
+        }
+    }
+
+    public static class DoubleColumn extends Column {
+        private double[] values = new double[16];
+
+        public void append(double value) {
+            if (size == values.length) values = Arrays.copyOf(values, grow(values.length, size + 1));
+            values[size++] = value;
+        }
+
+        /**
+         * Append a chunk of values
+         */
+        public void append(double[] chunk, int offset, int length) {
+            if (size + length > values.length) values = Arrays.copyOf(values, grow(values.length, size + length));
+            System.arraycopy(chunk, offset, values, size, length);
+            size += length;
+        }
+
+        public double get(int row) {
+            checkRow(row);
+            return values[row];
+        }
+
+        @Override
+        public String getString(int row) {
+            return String.valueOf(get(row));
+        }
+
+        @Override
+        void appendValue(Object value) {
+            append(((Number) value).doubleValue());
+        }
+
+        private void writeObject(ObjectOutputStream outputStream) throws IOException {
+            values = Arrays.copyOf(values, size);
+            outputStream.defaultWriteObject();
+        }
+    }
+
+    public static class LongColumn extends Column {
+        private long[] values = new long[16];
+
+        public void append(long value) {
+            if (size == values.length) values = Arrays.copyOf(values, grow(values.length, size + 1));
+            values[size++] = value;
+        }
+
+        /**
+         * Append a chunk of values
+         */
+        public void append(long[] chunk, int offset, int length) {
+            if (size + length > values.length) values = Arrays.copyOf(values, grow(values.length, size + length));
+            System.arraycopy(chunk, offset, values, size, length);
+            size += length;
+        }
+
+        public long get(int row) {
+            checkRow(row);
+            return values[row];
+        }
+
+        @Override
+        public String getString(int row) {
+            return String.valueOf(get(row));
+        }
+
+        @Override
+        void appendValue(Object value) {
+            append(((Number) value).longValue());
+        }
+
+        private void writeObject(ObjectOutputStream outputStream) throws IOException {
+            values = Arrays.copyOf(values, size);
+            outputStream.defaultWriteObject();
+        }
+    }
+
+    public static class StringColumn extends Column {
+        private int[] codes = new int[16];
+        private final List<String> dictionary = new ArrayList<>();
+        private final Map<String, Integer> index = new HashMap<>();
+
+        public void append(String value) {
+            Integer code = index.get(value);
+            if (code == null) {
+                code = dictionary.size();
+                dictionary.add(value);
+                index.put(value, code);
+            }
+            if (size == codes.length) codes = Arrays.copyOf(codes, grow(codes.length, size + 1));
+            codes[size++] = code;
+        }
+
+        public String get(int row) {
+            checkRow(row);
+            return dictionary.get(codes[row]);
+        }
+
+        /**
+         * @return number of distinct values in the column
+         */
+        public int getDictionarySize() {
+            return dictionary.size();
+        }
+
+        @Override
+        public String getString(int row) {
+            return get(row);
+        }
+
+        @Override
+        void appendValue(Object value) {
+            append(value == null ? null : value.toString());
+        }
+
+        private void writeObject(ObjectOutputStream outputStream) throws IOException {
+            codes = Arrays.copyOf(codes, size);
+            outputStream.defaultWriteObject();
+        }
+    }
+}
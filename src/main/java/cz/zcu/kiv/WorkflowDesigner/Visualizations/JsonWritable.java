@@ -0,0 +1,36 @@
+package cz.zcu.kiv.WorkflowDesigner.Visualizations;
+
+import java.io.IOException;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2018 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * This file hosts the interface of visualizations that can stream their JSON representation.
+ **********************************************************************************************************************/
+
+public interface JsonWritable {
+
+    /**
+     * Write the same JSON as toJSON without building it in memory first
+     * @param writer - writer positioned where a value is expected
+     */
+    void writeJSON(JsonWriter writer) throws IOException;
+}
@@ -0,0 +1,198 @@
+package cz.zcu.kiv.WorkflowDesigner.Visualizations;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2018 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * This file hosts a streaming JSON writer used to save visualizations without building org.json trees.
+ * Numbers are formatted into a reused buffer, so writing large arrays of doubles neither boxes nor allocates per value.
+ **********************************************************************************************************************/
+
+public class JsonWriter implements Closeable, Flushable {
+
+    private final Writer writer;
+    private final StringBuilder number = new StringBuilder(32);
+    private char[] buffer = new char[32];
+    //Per nesting level, whether a value was already written and the next one needs a separator
+    private boolean[] separated = new boolean[16];
+    private int depth = 0;
+    private boolean afterName = false;
+
+    /**
+     * @param writer - writer to write to, it is closed with this writer
+     */
+    public JsonWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * @param outputStream - stream to write to through a buffer, it is closed with this writer
+     * @param charset - encoding of the JSON
+     */
+    public JsonWriter(OutputStream outputStream, Charset charset) {
+        this(new BufferedWriter(new OutputStreamWriter(outputStream, charset), 65536));
+    }
+
+    public JsonWriter beginObject() throws IOException {
+        return open('{');
+    }
+
+    public JsonWriter endObject() throws IOException {
+        return close('}');
+    }
+
+    public JsonWriter beginArray() throws IOException {
+        return open('[');
+    }
+
+    public JsonWriter endArray() throws IOException {
+        return close(']');
+    }
+
+    private JsonWriter open(char bracket) throws IOException {
+        beforeValue();
+        writer.write(bracket);
+        if (++depth == separated.length) separated = Arrays.copyOf(separated, depth * 2);
+        separated[depth] = false;
+        return this;
+    }
+
+    private JsonWriter close(char bracket) throws IOException {
+        if (depth == 0) throw new IllegalStateException("Nothing to close");
+        depth--;
+        writer.write(bracket);
+        return this;
+    }
+
+    /**
+     * Write the name of the next member of an object
+     */
+    public JsonWriter name(String name) throws IOException {
+        beforeValue();
+        quote(name);
+        writer.write(':');
+        afterName = true;
+        return this;
+    }
+
+    private void beforeValue() throws IOException {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (separated[depth]) writer.write(',');
+        separated[depth] = true;
+    }
+
+    public JsonWriter value(String value) throws IOException {
+        if (value == null) return nullValue();
+        beforeValue();
+        quote(value);
+        return this;
+    }
+
+    /**
+     * Write a number, NaN and infinite values are written as null since JSON cannot represent them
+     */
+    public JsonWriter value(double value) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) return nullValue();
+        beforeValue();
+        number.setLength(0);
+        //Integral values are written without a fraction, as org.json does
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) number.append((long) value);
+        else number.append(value);
+        writeNumber();
+        return this;
+    }
+
+    public JsonWriter value(long value) throws IOException {
+        beforeValue();
+        number.setLength(0);
+        number.append(value);
+        writeNumber();
+        return this;
+    }
+
+    public JsonWriter value(boolean value) throws IOException {
+        beforeValue();
+        writer.write(value ? "true" : "false");
+        return this;
+    }
+
+    public JsonWriter nullValue() throws IOException {
+        beforeValue();
+        writer.write("null");
+        return this;
+    }
+
+    private void writeNumber() throws IOException {
+        int length = number.length();
+        if (length > buffer.length) buffer = new char[length];
+        number.getChars(0, length, buffer, 0);
+        writer.write(buffer, 0, length);
+    }
+
+    private void quote(String string) throws IOException {
+        writer.write('"');
+        int start = 0;
+        int length = string.length();
+        char previous = 0;
+        for (int i = 0; i < length; i++) {
+            char c = string.charAt(i);
+            String escape = null;
+            switch (c) {
+                case '"': escape = "\\\""; break;
+                case '\\': escape = "\\\\"; break;
+                case '\n': escape = "\\n"; break;
+                case '\r': escape = "\\r"; break;
+                case '\t': escape = "\\t"; break;
+                case '\b': escape = "\\b"; break;
+                case '\f': escape = "\\f"; break;
+                //Keeps "</script>" out of JSON embedded in HTML, as org.json does
+                case '/': if (previous == '<') escape = "\\/"; break;
+                default:
+                    if (c < 0x20 || (c >= 0x80 && c < 0xa0) || (c >= 0x2000 && c < 0x2100)) {
+                        escape = String.format("\\u%04x", (int) c);
+                    }
+            }
+            previous = c;
+            if (escape == null) continue;
+            writer.write(string, start, i - start);
+            writer.write(escape);
+            start = i + 1;
+        }
+        writer.write(string, start, length - start);
+        writer.write('"');
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
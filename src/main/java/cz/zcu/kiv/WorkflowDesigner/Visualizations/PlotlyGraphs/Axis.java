@@ -1,11 +1,14 @@
 package cz.zcu.kiv.WorkflowDesigner.Visualizations.PlotlyGraphs;
 
+import cz.zcu.kiv.WorkflowDesigner.Visualizations.JsonWritable;
+import cz.zcu.kiv.WorkflowDesigner.Visualizations.JsonWriter;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.io.Serializable;
 
-public class Axis implements Serializable {
+public class Axis implements Serializable, JsonWritable {
     double min,max;
 
     public double getMin() {
@@ -29,4 +32,11 @@ public class Axis implements Serializable {
         jsonObject.put("range",new JSONArray(new double[]{getMin(),getMax()}));
         return jsonObject;
     }
+
+    @Override
+    public void writeJSON(JsonWriter writer) throws IOException {
+        writer.beginObject();
+        writer.name("range").beginArray().value(getMin()).value(getMax()).endArray();
+        writer.endObject();
+    }
 }
@@ -25,13 +25,16 @@ package cz.zcu.kiv.WorkflowDesigner.Visualizations.PlotlyGraphs;
  * This class hosts the data structure for a plot
  **********************************************************************************************************************/
 
+import cz.zcu.kiv.WorkflowDesigner.Visualizations.JsonWritable;
+import cz.zcu.kiv.WorkflowDesigner.Visualizations.JsonWriter;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.List;
 
-public class Graph implements Serializable {
+public class Graph implements Serializable, JsonWritable {
     List<Trace>traces;
     Layout layout;
 
@@ -52,6 +55,23 @@ public class Graph implements Serializable {
         return traces;
     }
 
+    @Override
+    public void writeJSON(JsonWriter writer) throws IOException {
+        writer.beginObject();
+        writer.name("traces").beginArray();
+        if(traces!=null){
+            for(Trace trace:traces){
+                trace.writeJSON(writer);
+            }
+        }
+        writer.endArray();
+        if(getLayout()!=null){
+            writer.name("layout");
+            getLayout().writeJSON(writer);
+        }
+        writer.endObject();
+    }
+
 
     public List<Trace> getTraces() {
         return traces;
@@ -0,0 +1,224 @@
+package cz.zcu.kiv.WorkflowDesigner.Visualizations.PlotlyGraphs;
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2018 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * This class hosts the reduction of large traces to a budget of points that still renders like the original.
+ * Points are picked with Largest-Triangle-Three-Buckets or with the minimum and maximum of every bucket.
+ **********************************************************************************************************************/
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+public class GraphDecimator {
+
+    public enum Method {
+        //Largest-Triangle-Three-Buckets, keeps the visual shape of lines
+        LTTB,
+        //Minimum and maximum of every bucket, keeps the envelope of noisy signals
+        MIN_MAX
+    }
+
+    private final int pointBudget;
+    private final Method method;
+
+    /**
+     * @param pointBudget - maximum number of points of a decimated trace, at least 4
+     * @param method - how the points are picked
+     */
+    public GraphDecimator(int pointBudget, Method method) {
+        if (pointBudget < 4) throw new IllegalArgumentException("Point budget has to be at least 4");
+        this.pointBudget = pointBudget;
+        this.method = method;
+    }
+
+    /**
+     * @return true if some trace of the graph has more points than the budget
+     */
+    public boolean exceedsBudget(Graph graph) {
+        if (graph.getTraces() == null) return false;
+        for (Trace trace : graph.getTraces()) {
+            if (isDecimated(trace)) return true;
+        }
+        return false;
+    }
+
+    private boolean isDecimated(Trace trace) {
+        //3D traces are left alone, there is no screen axis to bucket them along
+        return trace.size() > pointBudget && trace.y != null && trace.z == null;
+    }
+
+    /**
+     * @return copy of the graph with traces over the budget decimated, other traces are shared with the original
+     */
+    public Graph decimate(Graph graph) {
+        Graph decimated = new Graph();
+        decimated.setLayout(graph.getLayout());
+        if (graph.getTraces() != null) {
+            List<Trace> traces = new ArrayList<>(graph.getTraces().size());
+            for (Trace trace : graph.getTraces()) {
+                traces.add(decimate(trace));
+            }
+            decimated.setTraces(traces);
+        }
+        return decimated;
+    }
+
+    /**
+     * @return copy of the graph with no trace over the budget, traces that cannot be decimated are cut short
+     */
+    public Graph preview(Graph graph) {
+        Graph preview = decimate(graph);
+        if (preview.getTraces() != null) {
+            List<Trace> traces = new ArrayList<>(preview.getTraces().size());
+            for (Trace trace : preview.getTraces()) {
+                traces.add(trace.size() > pointBudget ? head(trace) : trace);
+            }
+            preview.setTraces(traces);
+        }
+        return preview;
+    }
+
+    private Trace head(Trace trace) {
+        int[] indices = new int[pointBudget];
+        for (int i = 0; i < indices.length; i++) indices[i] = i;
+        return select(trace, indices);
+    }
+
+    /**
+     * @return trace with at most pointBudget points, the trace itself if it is within the budget
+     */
+    public Trace decimate(Trace trace) {
+        if (!isDecimated(trace)) return trace;
+        int[] indices = method == Method.LTTB ? largestTriangles(trace) : minMax(trace);
+        return select(trace, indices);
+    }
+
+    private static double x(Trace trace, int index) {
+        //Plotly places points without x at their index
+        return trace.x == null ? index : trace.x[index];
+    }
+
+    private int[] largestTriangles(Trace trace) {
+        int size = trace.size();
+        double[] y = trace.y;
+        int[] indices = new int[pointBudget];
+        double bucketSize = (double) (size - 2) / (pointBudget - 2);
+        int selected = 0;
+        indices[0] = 0;
+
+        for (int bucket = 0; bucket < pointBudget - 2; bucket++) {
+            int start = (int) (bucket * bucketSize) + 1;
+            int end = (int) ((bucket + 1) * bucketSize) + 1;
+
+            //Average of the next bucket is the third vertex of the triangles
+            int nextStart = end;
+            int nextEnd = Math.min((int) ((bucket + 2) * bucketSize) + 1, size);
+            double averageX = 0, averageY = 0;
+            int count = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                if (Double.isNaN(y[i])) continue;
+                averageX += x(trace, i);
+                averageY += y[i];
+                count++;
+            }
+            if (count > 0) {
+                averageX /= count;
+                averageY /= count;
+            }
+            else {
+                averageX = x(trace, size - 1);
+                averageY = y[size - 1];
+            }
+
+            double selectedX = x(trace, selected);
+            double selectedY = y[selected];
+            double maxArea = -1;
+            int chosen = start;
+            for (int i = start; i < end; i++) {
+                double area = Math.abs((selectedX - averageX) * (y[i] - selectedY) - (selectedX - x(trace, i)) * (averageY - selectedY));
+                if (area > maxArea) {
+                    maxArea = area;
+                    chosen = i;
+                }
+            }
+            indices[bucket + 1] = chosen;
+            selected = chosen;
+        }
+        indices[pointBudget - 1] = size - 1;
+        return indices;
+    }
+
+    private int[] minMax(Trace trace) {
+        int size = trace.size();
+        double[] y = trace.y;
+        int buckets = pointBudget / 2;
+        int[] indices = new int[buckets * 2];
+        int count = 0;
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            int start = (int) ((long) bucket * size / buckets);
+            int end = (int) ((long) (bucket + 1) * size / buckets);
+            int min = start, max = start;
+            for (int i = start; i < end; i++) {
+                if (Double.isNaN(y[i])) continue;
+                if (Double.isNaN(y[min]) || y[i] < y[min]) min = i;
+                if (Double.isNaN(y[max]) || y[i] > y[max]) max = i;
+            }
+            //Points stay in the order of the trace
+            indices[count++] = Math.min(min, max);
+            if (min != max) indices[count++] = Math.max(min, max);
+        }
+        return Arrays.copyOf(indices, count);
+    }
+
+    private static Trace select(Trace trace, int[] indices) {
+        double[] x = new double[indices.length];
+        for (int i = 0; i < indices.length; i++) x[i] = x(trace, indices[i]);
+        Trace decimated = new Trace();
+        decimated.setCoordinates(x, select(trace.y, indices), select(trace.z, indices));
+        if (trace.labels != null) {
+            String[] labels = new String[indices.length];
+            for (int i = 0; i < indices.length; i++) labels[i] = trace.labels[indices[i]];
+            decimated.setLabels(labels);
+        }
+        decimated.setName(trace.getName());
+        decimated.setTraceMode(trace.getTraceMode());
+        decimated.setGraphType(trace.getGraphType());
+        decimated.setMarker(trace.getMarker());
+        return decimated;
+    }
+
+    private static double[] select(double[] values, int[] indices) {
+        if (values == null) return null;
+        double[] selected = new double[indices.length];
+        for (int i = 0; i < indices.length; i++) selected[i] = values[indices[i]];
+        return selected;
+    }
+
+    public int getPointBudget() {
+        return pointBudget;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+}
@@ -1,11 +1,14 @@
 package cz.zcu.kiv.WorkflowDesigner.Visualizations.PlotlyGraphs;
 
+import cz.zcu.kiv.WorkflowDesigner.Visualizations.JsonWritable;
+import cz.zcu.kiv.WorkflowDesigner.Visualizations.JsonWriter;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.io.Serializable;
 
-public class Layout implements Serializable {
+public class Layout implements Serializable, JsonWritable {
     String title;
     Axis xaxis;
     Axis yaxis;
@@ -43,4 +46,20 @@ public class Layout implements Serializable {
         jsonObject.put("yaxis",getYaxis().toJSON());
         return jsonObject;
     };
+
+    @Override
+    public void writeJSON(JsonWriter writer) throws IOException {
+        writer.beginObject();
+        if(getTitle()!=null)
+            writer.name("title").value(getTitle());
+        if(getXaxis()!=null){
+            writer.name("xaxis");
+            getXaxis().writeJSON(writer);
+        }
+        if(getYaxis()!=null){
+            writer.name("yaxis");
+            getYaxis().writeJSON(writer);
+        }
+        writer.endObject();
+    }
 }
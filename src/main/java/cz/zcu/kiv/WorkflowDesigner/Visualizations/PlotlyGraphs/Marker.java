@@ -27,11 +27,14 @@ package cz.zcu.kiv.WorkflowDesigner.Visualizations.PlotlyGraphs;
  **********************************************************************************************************************/
 
 
+import cz.zcu.kiv.WorkflowDesigner.Visualizations.JsonWritable;
+import cz.zcu.kiv.WorkflowDesigner.Visualizations.JsonWriter;
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.io.Serializable;
 
-public class Marker implements Serializable {
+public class Marker implements Serializable, JsonWritable {
     Double size;
 
     public Double getSize() {
@@ -47,4 +50,12 @@ public class Marker implements Serializable {
         jsonObject.put("size",getSize());
         return jsonObject;
     }
+
+    @Override
+    public void writeJSON(JsonWriter writer) throws IOException {
+        writer.beginObject();
+        if(getSize()!=null)
+            writer.name("size").value(getSize());
+        writer.endObject();
+    }
 }
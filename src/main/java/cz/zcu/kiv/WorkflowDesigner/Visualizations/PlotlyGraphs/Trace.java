@@ -25,15 +25,26 @@ package cz.zcu.kiv.WorkflowDesigner.Visualizations.PlotlyGraphs;
  * This class hosts the data structure for a single trace of points/lines in a graph
  **********************************************************************************************************************/
 
+import cz.zcu.kiv.WorkflowDesigner.Visualizations.JsonWritable;
+import cz.zcu.kiv.WorkflowDesigner.Visualizations.JsonWriter;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
 
 
-public class Trace implements Serializable {
-    List<Point> points;
+public class Trace implements Serializable, JsonWritable {
+    //Coordinates of the points, an axis without any values is null and missing values are NaN
+    double[] x;
+    double[] y;
+    double[] z;
+    String[] labels;
+    int size;
     TraceMode traceMode;
     GraphType graphType;
     String name;
@@ -42,37 +53,23 @@ public class Trace implements Serializable {
 
     public JSONObject toJSON() {
         JSONObject jsonObject = new JSONObject();
-        JSONArray x = new JSONArray();
-        JSONArray y = new JSONArray();
-        JSONArray z = new JSONArray();
-        JSONArray labels = new JSONArray();
 
-        for(Point point:getPoints()){
-            Coordinate coordinate = point.getCoordinate();
-            if(coordinate.getX()!=null)
-                x.put(coordinate.getX());
+        if(x!=null)
+            jsonObject.put("x",toJSONArray(x,size));
 
-            if(coordinate.getY()!=null)
-                y.put(coordinate.getY());
+        if(y!=null)
+            jsonObject.put("y",toJSONArray(y,size));
 
-            if(coordinate.getZ()!=null)
-                z.put(coordinate.getZ());
+        if(z!=null)
+            jsonObject.put("z",toJSONArray(z,size));
 
-            if(point.getLabel()!=null)
-                labels.put(point.getLabel());
+        if(labels!=null){
+            JSONArray text = new JSONArray();
+            for(int i=0;i<size;i++)
+                text.put(labels[i]==null?JSONObject.NULL:labels[i]);
+            jsonObject.put("text", text);
         }
 
-        if(!x.toList().isEmpty())
-            jsonObject.put("x",x);
-
-        if(!y.toList().isEmpty())
-            jsonObject.put("y",y);
-
-        if(!z.toList().isEmpty())
-            jsonObject.put("z",z);
-
-        if(!labels.toList().isEmpty()) jsonObject.put("text", labels);
-
         if(getMarker()!=null)
             jsonObject.put("marker",getMarker().toJSON());
 
@@ -88,12 +85,334 @@ public class Trace implements Serializable {
         return jsonObject;
     }
 
+    private static JSONArray toJSONArray(double[] values, int size) {
+        JSONArray array = new JSONArray();
+        for (int i = 0; i < size; i++) {
+            //Plotly leaves a gap for null values
+            if (Double.isNaN(values[i])) array.put(JSONObject.NULL);
+            else array.put(values[i]);
+        }
+        return array;
+    }
+
+    @Override
+    public void writeJSON(JsonWriter writer) throws IOException {
+        writer.beginObject();
+        writeValues(writer, "x", x);
+        writeValues(writer, "y", y);
+        writeValues(writer, "z", z);
+        if(labels!=null){
+            writer.name("text").beginArray();
+            for(int i=0;i<size;i++)
+                writer.value(labels[i]);
+            writer.endArray();
+        }
+        if(getMarker()!=null){
+            writer.name("marker");
+            getMarker().writeJSON(writer);
+        }
+        if(getGraphType()!=null)
+            writer.name("type").value(getGraphType().getType());
+        if(getTraceMode()!=null)
+            writer.name("mode").value(getTraceMode().getMode());
+        if(getName()!=null)
+            writer.name("name").value(getName());
+        writer.endObject();
+    }
+
+    private void writeValues(JsonWriter writer, String name, double[] values) throws IOException {
+        if (values == null) return;
+        writer.name(name).beginArray();
+        for (int i = 0; i < size; i++) {
+            writer.value(values[i]);
+        }
+        writer.endArray();
+    }
+
+    /**
+     * Replace the points of the trace by coordinate arrays, the arrays are used as they are without copying
+     * @param x - x coordinates, null if the trace has none
+     * @param y - y coordinates of the same length, null if the trace has none
+     */
+    public void setCoordinates(double[] x, double[] y) {
+        setCoordinates(x, y, null);
+    }
+
+    /**
+     * Replace the points of the trace by coordinate arrays, the arrays are used as they are without copying
+     * @param x - x coordinates, null if the trace has none
+     * @param y - y coordinates of the same length, null if the trace has none
+     * @param z - z coordinates of the same length, null if the trace has none
+     */
+    public void setCoordinates(double[] x, double[] y, double[] z) {
+        int length = -1;
+        for (double[] values : new double[][]{x, y, z}) {
+            if (values == null) continue;
+            if (length >= 0 && values.length != length) throw new IllegalArgumentException("Coordinate arrays differ in length");
+            length = values.length;
+        }
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.labels = null;
+        this.size = Math.max(length, 0);
+    }
+
+    /**
+     * @param labels - text of every point, null to remove the labels
+     */
+    public void setLabels(String[] labels) {
+        if (labels != null && labels.length != size) throw new IllegalArgumentException("Expected " + size + " labels but got " + labels.length);
+        this.labels = labels;
+    }
+
+    public void addPoint(double x, double y) {
+        addPoint(x, y, Double.NaN, null);
+    }
+
+    public void addPoint(double x, double y, double z) {
+        addPoint(x, y, z, null);
+    }
+
+    /**
+     * Append a point, NaN marks a coordinate the point does not have
+     * @param label - text of the point, may be null
+     */
+    public void addPoint(double x, double y, double z, String label) {
+        int capacity = capacity();
+        if (capacity <= size) capacity = size + (size >> 1) + 16;
+        this.x = append(this.x, x, capacity);
+        this.y = append(this.y, y, capacity);
+        this.z = append(this.z, z, capacity);
+        if (label != null && labels == null) labels = new String[capacity];
+        if (labels != null) {
+            if (labels.length < capacity) labels = Arrays.copyOf(labels, capacity);
+            labels[size] = label;
+        }
+        size++;
+    }
+
+    private static int length(double[] values) {
+        return values == null ? 0 : values.length;
+    }
+
+    //Length of the longest array, at least the number of points
+    private int capacity() {
+        int capacity = Math.max(Math.max(length(x), length(y)), length(z));
+        if (labels != null) capacity = Math.max(capacity, labels.length);
+        return Math.max(capacity, size);
+    }
+
+    private double[] append(double[] values, double value, int capacity) {
+        if (values == null) {
+            if (Double.isNaN(value)) return null;
+            //The axis appears with this point, earlier points lack it
+            values = new double[capacity];
+            Arrays.fill(values, 0, size, Double.NaN);
+        }
+        else if (values.length < capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+        values[size] = value;
+        return values;
+    }
+
+    /**
+     * @return number of points of the trace
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return estimated number of bytes the points of the trace occupy on the heap
+     */
+    public long estimateSize() {
+        long bytes = 64;
+        for (double[] values : new double[][]{x, y, z}) {
+            if (values != null) bytes += 16 + 8L * values.length;
+        }
+        if (labels != null) {
+            //Labels are extrapolated from the first one
+            String first = size == 0 ? null : labels[0];
+            bytes += 16 + 8L * labels.length + (first == null ? 0 : size * (40 + 2L * first.length()));
+        }
+        return bytes;
+    }
+
+    /**
+     * @return x coordinates of the points, null if the trace has none
+     */
+    public double[] getX() {
+        x = trim(x);
+        return x;
+    }
+
+    /**
+     * @return y coordinates of the points, null if the trace has none
+     */
+    public double[] getY() {
+        y = trim(y);
+        return y;
+    }
+
+    /**
+     * @return z coordinates of the points, null if the trace has none
+     */
+    public double[] getZ() {
+        z = trim(z);
+        return z;
+    }
+
+    /**
+     * @return labels of the points, null if the trace has none
+     */
+    public String[] getLabels() {
+        if (labels != null && labels.length != size) labels = Arrays.copyOf(labels, size);
+        return labels;
+    }
+
+    private double[] trim(double[] values) {
+        return values == null || values.length == size ? values : Arrays.copyOf(values, size);
+    }
+
+    /**
+     * @return view creating a Point whenever it is accessed, changes to the view are written to the coordinate arrays
+     */
     public List<Point> getPoints() {
-        return points;
+        return new AbstractList<Point>() {
+            @Override
+            public Point get(int index) {
+                checkIndex(index);
+                Coordinate coordinate = new Coordinate(value(x, index), value(y, index), value(z, index));
+                return new Point(coordinate, labels == null ? null : labels[index]);
+            }
+
+            @Override
+            public Point set(int index, Point point) {
+                Point previous = get(index);
+                setPoint(index, point);
+                return previous;
+            }
+
+            @Override
+            public void add(int index, Point point) {
+                if (index < 0 || index > size) throw new IndexOutOfBoundsException("Point " + index);
+                if (index == size) addPoint(point);
+                else insertPoint(index, point);
+                modCount++;
+            }
+
+            @Override
+            public Point remove(int index) {
+                Point previous = get(index);
+                removePoints(index, index + 1);
+                modCount++;
+                return previous;
+            }
+
+            @Override
+            protected void removeRange(int fromIndex, int toIndex) {
+                removePoints(fromIndex, toIndex);
+                modCount++;
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
     }
 
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Point " + index);
+    }
+
+    /**
+     * Overwrite the point at an index, an axis the trace did not have yet is missing for the other points
+     */
+    private void setPoint(int index, Point point) {
+        checkIndex(index);
+        Coordinate coordinate = point.getCoordinate();
+        int capacity = capacity();
+        x = put(x, index, coordinate == null ? Double.NaN : number(coordinate.getX()), capacity);
+        y = put(y, index, coordinate == null ? Double.NaN : number(coordinate.getY()), capacity);
+        z = put(z, index, coordinate == null ? Double.NaN : number(coordinate.getZ()), capacity);
+        if (point.getLabel() != null && labels == null) labels = new String[capacity];
+        if (labels != null) labels[index] = point.getLabel();
+    }
+
+    private double[] put(double[] values, int index, double value, int capacity) {
+        if (values == null) {
+            if (Double.isNaN(value)) return null;
+            values = new double[capacity];
+            Arrays.fill(values, 0, size, Double.NaN);
+        }
+        values[index] = value;
+        return values;
+    }
+
+    /**
+     * Insert a point before an index by appending a slot and shifting the following points
+     */
+    private void insertPoint(int index, Point point) {
+        addPoint(Double.NaN, Double.NaN, Double.NaN, null);
+        for (double[] values : new double[][]{x, y, z}) {
+            if (values != null) System.arraycopy(values, index, values, index + 1, size - 1 - index);
+        }
+        if (labels != null) System.arraycopy(labels, index, labels, index + 1, size - 1 - index);
+        setPoint(index, point);
+    }
+
+    /**
+     * Remove the points from an index up to another, the following points are shifted down
+     */
+    private void removePoints(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > size || fromIndex > toIndex) throw new IndexOutOfBoundsException("Points " + fromIndex + " to " + toIndex);
+        int moved = size - toIndex;
+        for (double[] values : new double[][]{x, y, z}) {
+            if (values != null) System.arraycopy(values, toIndex, values, fromIndex, moved);
+        }
+        if (labels != null) {
+            System.arraycopy(labels, toIndex, labels, fromIndex, moved);
+            Arrays.fill(labels, fromIndex + moved, size, null);
+        }
+        size -= toIndex - fromIndex;
+    }
+
+    private static Double value(double[] values, int index) {
+        return values == null || Double.isNaN(values[index]) ? null : values[index];
+    }
+
+    private void addPoint(Point point) {
+        Coordinate coordinate = point.getCoordinate();
+        addPoint(coordinate == null ? Double.NaN : number(coordinate.getX()),
+                coordinate == null ? Double.NaN : number(coordinate.getY()),
+                coordinate == null ? Double.NaN : number(coordinate.getZ()), point.getLabel());
+    }
+
+    private static double number(Double value) {
+        return value == null ? Double.NaN : value;
+    }
+
+    /**
+     * Replace the points of the trace. Unlike in earlier versions the list is not kept, its points are copied into
+     * coordinate arrays, so later changes to the list do not reach the trace. Change the list returned by getPoints instead.
+     */
     public void setPoints(List<Point> points) {
-        this.points = points;
+        x = null;
+        y = null;
+        z = null;
+        labels = null;
+        size = 0;
+        if (points == null) return;
+        for (Point point : points) {
+            addPoint(point);
+        }
+        x = trim(x);
+        y = trim(y);
+        z = trim(z);
+        getLabels();
     }
 
     public TraceMode getTraceMode() {
@@ -127,4 +446,12 @@ public class Trace implements Serializable {
     public void setMarker(Marker marker) {
         this.marker = marker;
     }
+
+    private void writeObject(ObjectOutputStream outputStream) throws IOException {
+        getX();
+        getY();
+        getZ();
+        getLabels();
+        outputStream.defaultWriteObject();
+    }
 }
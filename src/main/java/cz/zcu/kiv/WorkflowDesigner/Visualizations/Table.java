@@ -3,7 +3,8 @@ package cz.zcu.kiv.WorkflowDesigner.Visualizations;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
-import java.io.Serializable;
+import java.io.*;
+import java.nio.charset.Charset;
 import java.util.List;
 
 /***********************************************************************************************************************
@@ -32,7 +33,7 @@ import java.util.List;
  * This file hosts the Table data type required to return a table as the output of a workflow block
  **********************************************************************************************************************/
 
-public class Table implements Serializable {
+public class Table implements Serializable, JsonWritable {
     private String caption;
     private List<String> columnHeaders;
     private List<String> rowHeaders;
@@ -95,6 +96,7 @@ public class Table implements Serializable {
             html.append("</tr>\n");
         }
 
+        List<List<String>> rows = getRows();
         for(int i=0;i<rows.size();i++){
             html.append("<tr>");
             if(hasRowHeaders){
@@ -127,6 +129,7 @@ public class Table implements Serializable {
             data.put(headerRow);
         }
 
+        List<List<String>> rows = getRows();
         for(int i=0;i<rows.size();i++){
             JSONArray row = new JSONArray();
             if(hasRowHeaders){
@@ -141,17 +144,129 @@ public class Table implements Serializable {
         return table;
     }
 
-    public String toCSV() {
-        JSONArray rows=toJSON().getJSONArray("data");
-        StringBuilder csv=new StringBuilder();
-        for(int i=0;i<rows.length();i++){
-            JSONArray columns=rows.getJSONArray(i);
-            for(int j=0;j<columns.length();j++){
-                csv.append(columns.get(j));
-                if(j<columns.length()-1)csv.append(",");
-                else csv.append("\n");
+    @Override
+    public void writeJSON(JsonWriter writer) throws IOException {
+        boolean hasColumnHeaders = getColumnHeaders()!=null&&getColumnHeaders().size()>0;
+        boolean hasRowHeaders = getRowHeaders()!=null&&getRowHeaders().size()>0;
+
+        writer.beginObject();
+        writer.name("data").beginArray();
+        if(hasColumnHeaders){
+            writer.beginArray();
+            if(hasRowHeaders){
+                writer.value("");
+            }
+            for(String header:getColumnHeaders()){
+                writer.value(header);
+            }
+            writer.endArray();
+        }
+
+        List<List<String>> rows = getRows();
+        for(int i=0;i<rows.size();i++){
+            writer.beginArray();
+            if(hasRowHeaders){
+                writer.value(getRowHeaders().get(i));
             }
+            for(String col:rows.get(i)){
+                writer.value(col);
+            }
+            writer.endArray();
+        }
+        writer.endArray();
+        writer.endObject();
+    }
+
+    /**
+     * head - First rows of the table, used to preview large tables
+     * @param count - maximum number of rows
+     * @return table sharing the headers and the first rows with this table
+     */
+    public Table head(int count){
+        Table head = new Table();
+        head.setCaption(getCaption());
+        head.setColumnHeaders(getColumnHeaders());
+        List<List<String>> rows = getRows();
+        int size = Math.min(count, rows.size());
+        head.setRows(rows.subList(0, size));
+        if(getRowHeaders()!=null)
+            head.setRowHeaders(getRowHeaders().subList(0, Math.min(size, getRowHeaders().size())));
+        return head;
+    }
+
+    public String toCSV() {
+        StringWriter csv=new StringWriter();
+        try {
+            writeCSV(csv);
+        }
+        catch (IOException e){
+            //StringWriter does not throw
+            throw new IllegalStateException(e);
         }
         return csv.toString();
     }
+
+    /**
+     * writeCSV - Stream the table as CSV, one row at a time
+     *
+     * Cells containing separators, quotes or line breaks are quoted as described by RFC 4180
+     * @param outputStream - stream to write to, it is flushed but not closed
+     * @param charset - encoding of the CSV
+     */
+    public void writeCSV(OutputStream outputStream, Charset charset) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, charset));
+        writeCSV(writer);
+        writer.flush();
+    }
+
+    /**
+     * writeCSV - Stream the table as CSV, one row at a time
+     *
+     * Cells containing separators, quotes or line breaks are quoted as described by RFC 4180
+     * @param writer - writer to write to, it is neither flushed nor closed
+     */
+    public void writeCSV(Writer writer) throws IOException {
+        boolean hasColumnHeaders = getColumnHeaders()!=null&&getColumnHeaders().size()>0;
+        boolean hasRowHeaders = getRowHeaders()!=null&&getRowHeaders().size()>0;
+
+        if(hasColumnHeaders){
+            if(hasRowHeaders){
+                writer.write(",");
+            }
+            writeCSVRow(writer, getColumnHeaders());
+        }
+
+        List<List<String>> rows = getRows();
+        for(int i=0;i<rows.size();i++){
+            if(hasRowHeaders){
+                writeCSVCell(writer, getRowHeaders().get(i));
+                writer.write(",");
+            }
+            writeCSVRow(writer, rows.get(i));
+        }
+    }
+
+    private static void writeCSVRow(Writer writer, List<String> cells) throws IOException {
+        for(int j=0;j<cells.size();j++){
+            if(j>0)writer.write(",");
+            writeCSVCell(writer, cells.get(j));
+        }
+        writer.write("\n");
+    }
+
+    private static void writeCSVCell(Writer writer, String cell) throws IOException {
+        if(cell==null)return;
+        boolean quote=false;
+        for(int i=0;i<cell.length()&&!quote;i++){
+            char c=cell.charAt(i);
+            quote = c==',' || c=='"' || c=='\n' || c=='\r';
+        }
+        if(!quote){
+            writer.write(cell);
+            return;
+        }
+        writer.write('"');
+        writer.write(cell.replace("\"","\"\""));
+        writer.write('"');
+    }
 }
@@ -1,21 +1,21 @@
 package cz.zcu.kiv.WorkflowDesigner;
 
 import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockType;
-import cz.zcu.kiv.WorkflowDesigner.Visualizations.PlotlyGraphs.Graph;
-import cz.zcu.kiv.WorkflowDesigner.Visualizations.Table;
-import org.apache.commons.io.FileUtils;
+import cz.zcu.kiv.WorkflowDesigner.Visualizations.PlotlyGraphs.GraphDecimator;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.reflections.Reflections;
+import org.reflections.util.ClasspathHelper;
+import org.reflections.util.ConfigurationBuilder;
+import org.reflections.util.FilterBuilder;
 
-import java.io.File;
-import java.io.IOException;
-import java.lang.annotation.Annotation;
+import java.io.*;
 import java.lang.reflect.InvocationTargetException;
-import java.nio.charset.Charset;
+import java.net.URL;
 import java.util.*;
+import java.util.concurrent.*;
 
 /***********************************************************************************************************************
  *
@@ -49,7 +49,25 @@ public class Workflow {
     private ClassLoader classLoader;
     private Map<Class,String>moduleSource;
     private String module;
-    private List<Block> blockDefinitions = null;
+    private Map<String, Class<?>> blockTypes = null;
+    private Map<String, BlockRegistry.Entry> indexedBlockTypes = null;
+    private Map<String, Block> blockDefinitions = null;
+    private ExecutorService executorService;
+    private JarWorkerPool jarWorkerPool;
+    private JarClassLoaderCache jarClassLoaderCache;
+    private BlockDataCodec blockDataCodec = new BinaryBlockDataCodec();
+    private int outputLimit = OutputCapture.DEFAULT_LIMIT;
+    private long progressInterval = 1000;
+    private int progressBatchSize = 16;
+    private long outputHeapBudget = Long.MAX_VALUE;
+    private File outputSpillDirectory;
+    private ResultCache resultCache;
+    private FileFingerprints fileFingerprints;
+    private GraphDecimator graphDecimator;
+    private OutputHandlerRegistry outputHandlers;
+    private int previewRows = 0;
+    private int previewPoints = 0;
+    private final List<WorkflowListener> listeners = new CopyOnWriteArrayList<>();
 
 
     private static Log logger = LogFactory.getLog(Workflow.class);
@@ -99,57 +117,124 @@ public class Workflow {
     }
 
     /**
-     * getBlockDefinitions - Joey Pinto
-     * This method creates a singleton access to block definitions
+     * getBlockTypes - Joey Pinto
+     * This method creates a singleton access to the annotated block classes of the workflow modules
      *
-     * If not initialized, it searches for all classes with @BlockType annotations and gets the type and family
-     * @return List of Block objects
+     * Blocks are read from the compile time block indexes of the modules. Only the classpath roots of the packages
+     * that have no index are scanned with reflection, once per Workflow. The classes are indexed by their @BlockType
+     * type
+     * @return Map of block type name to annotated class
      */
-    private List<Block> getBlockDefinitions() throws IllegalAccessException, InstantiationException, NoSuchMethodException, InvocationTargetException {
-        if(blockDefinitions !=null) return blockDefinitions;
-        else blockDefinitions = new ArrayList<>();
+    public synchronized Map<String, Class<?>> getBlockTypes() {
+        if(blockTypes!=null) return blockTypes;
 
-        Set<Class<?>> blockTypes;
+        HashSet<String>packages=new HashSet<>();
         if(moduleSource!=null){
-            Collection<String> modules = moduleSource.values();
-            HashSet<String>packages=new HashSet<>();
-            for(String module:modules){
+            for(String module:moduleSource.values()){
                 packages.add(module.split(":")[1]);
             }
-            // Load classes from packages using reflection
-            blockTypes = new Reflections(packages.toArray(new String[packages.size()]),this.classLoader).getTypesAnnotatedWith(BlockType.class);
+        }
+        else packages.add(module.split(":")[1]);
+
+        Map<String, Class<?>> types = new LinkedHashMap<>();
+        Map<String, BlockRegistry.Entry> entries = new HashMap<>();
 
+        BlockRegistry registry;
+        try {
+            registry = BlockRegistry.load(classLoader);
+        }
+        catch (IOException e){
+            logger.error("Could not read block index, falling back to classpath scanning",e);
+            registry = new BlockRegistry();
+        }
+
+        for(String packageName:packages){
+            for(BlockRegistry.Entry entry:registry.getEntries(packageName)){
+                try {
+                    types.put(entry.getType(), Class.forName(entry.getClassName(), true, classLoader));
+                    entries.put(entry.getType(), entry);
+                }
+                catch (ClassNotFoundException e){
+                    logger.error("Indexed block class "+entry.getClassName()+" could not be loaded",e);
+                }
+            }
+        }
+
+        //Modules without an index, for example those built by an older version, are scanned with reflection
+        Set<URL> unindexedRoots = new LinkedHashSet<>();
+        for(String packageName:packages){
+            for(URL root:ClasspathHelper.forPackage(packageName, classLoader)){
+                if(!registry.isIndexed(root)) unindexedRoots.add(root);
+            }
+        }
+        if(!unindexedRoots.isEmpty()){
+            ConfigurationBuilder configuration = new ConfigurationBuilder()
+                    .setUrls(unindexedRoots)
+                    .addClassLoader(classLoader)
+                    .filterInputsBy(new FilterBuilder().includePackage(packages.toArray(new String[packages.size()])));
+            Set<Class<?>> annotatedTypes = new Reflections(configuration).getTypesAnnotatedWith(BlockType.class);
+            for(Class<?> blockType:annotatedTypes){
+                String type = blockType.getAnnotation(BlockType.class).type();
+                if(!types.containsKey(type)) types.put(type, blockType);
+            }
         }
-        else
-            //Load classes from specific module
-            blockTypes = new Reflections(module.split(":")[1],classLoader).getTypesAnnotatedWith(BlockType.class);
 
-        for(Class blockType:blockTypes){
+        logger.info("Found "+types.size()+" block types, "+entries.size()+" from the block index");
+        blockTypes = Collections.unmodifiableMap(types);
+        indexedBlockTypes = entries;
+        return blockTypes;
+    }
+
+    /**
+     * getBlockDefinitions - Joey Pinto
+     * This method creates a singleton access to block definitions
+     *
+     * If not initialized, it instantiates all classes with @BlockType annotations and gets the type and family.
+     * Inputs, outputs and properties of blocks found in the block index are read from the index.
+     * @return Collection of Block objects
+     */
+    private synchronized Collection<Block> getBlockDefinitions() throws IllegalAccessException, InstantiationException {
+        if(blockDefinitions !=null) return blockDefinitions.values();
+
+        Map<String,Block> definitions = new LinkedHashMap<>();
+        for(Map.Entry<String, Class<?>> entry:getBlockTypes().entrySet()){
+                Class<?> blockType = entry.getValue();
+
                 //Instantiate block
                 Block block= new Block(blockType.newInstance(),this);
-                Annotation annotation = blockType.getAnnotation(BlockType.class);
-                Class<? extends Annotation> type = annotation.annotationType();
-
-                //Load information from annotations
-                String blockTypeName = (String)type.getDeclaredMethod("type").invoke(annotation, (Object[])null);
-                String blockTypeFamily = (String)type.getDeclaredMethod("family").invoke(annotation, (Object[])null);
-                Boolean jarExecutable = (Boolean) type.getDeclaredMethod("runAsJar").invoke(annotation, (Object[])null);
-                String description = (String)type.getDeclaredMethod("description").invoke(annotation, (Object[])null);
-                block.setName(blockTypeName);
-                block.setFamily(blockTypeFamily);
-                block.setJarExecutable(jarExecutable);
-                block.setDescription(description);
+                BlockRegistry.Entry indexEntry = indexedBlockTypes.get(entry.getKey());
+
+                if(indexEntry!=null){
+                    //Load information from the block index
+                    block.setName(indexEntry.getType());
+                    block.setFamily(indexEntry.getFamily());
+                    block.setJarExecutable(indexEntry.isRunAsJar());
+                    block.setDescription(indexEntry.getDescription());
+                    block.setProperties(indexEntry.getPropertiesByName());
+                    block.setInput(indexEntry.getInputsByName());
+                    block.setOutput(indexEntry.getOutputsByName());
+                }
+                else {
+                    //Load information from annotations
+                    BlockType annotation = blockType.getAnnotation(BlockType.class);
+                    block.setName(annotation.type());
+                    block.setFamily(annotation.family());
+                    block.setJarExecutable(annotation.runAsJar());
+                    block.setDescription(annotation.description());
+                }
 
                 if(moduleSource!=null)
                     block.setModule(moduleSource.get(blockType));
                 else{
                     block.setModule(module);
                 }
-                block.initialize();
-                blockDefinitions.add(block);
+                if(indexEntry==null)
+                    block.initialize();
+                definitions.put(entry.getKey(), block);
 
         }
-        return blockDefinitions;
+        blockDefinitions = definitions;
+        return blockDefinitions.values();
     }
 
     /**
@@ -160,12 +245,8 @@ public class Workflow {
      * @return Block attributes
      */
     public Block getDefinition(String name) throws InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException {
-        for(Block block:getBlockDefinitions()){
-            if(block.getName().equals(name)){
-                return block;
-            }
-        }
-        return null;
+        getBlockDefinitions();
+        return blockDefinitions.get(name);
     }
 
     /**
@@ -176,33 +257,16 @@ public class Workflow {
      */
     public Map<Integer, Block> indexBlocks(JSONArray blocksArray) throws IllegalAccessException, NoSuchMethodException, InvocationTargetException, InstantiationException, FieldMismatchException {
         Map<Integer,Block> blocks=new HashMap<>();
+        Map<String, Class<?>> blockTypes = getBlockTypes();
         for(int i=0; i<blocksArray.length(); i++){
 
             JSONObject blockObject=blocksArray.getJSONObject(i);
             Block block = null;
 
             //get Block object by type of block in JSON
-            Set<Class<?>> blockTypes;
-            if(moduleSource!=null){
-                Collection<String> modules = moduleSource.values();
-                HashSet<String>packages=new HashSet<>();
-                for(String module:modules){
-                    packages.add(module.split(":")[1]);
-                }
-                blockTypes = new Reflections(packages.toArray(new String[packages.size()]),this.classLoader).getTypesAnnotatedWith(BlockType.class);
-            }
-            else{
-                blockTypes = new Reflections(module.split(":")[1],this.classLoader).getTypesAnnotatedWith(BlockType.class);
-            }
-
-            for(Class blockType:blockTypes){
-                Annotation annotation = blockType.getAnnotation(BlockType.class);
-                Class<? extends Annotation> type = annotation.annotationType();
-                String blockTypeName = (String)type.getDeclaredMethod("type").invoke(annotation, (Object[])null);
-                if (blockObject.getString("type").equals(blockTypeName)){
-                        block = new Block(blockType.newInstance(),this);
-                        break;
-                }
+            Class<?> blockType = blockTypes.get(blockObject.getString("type"));
+            if(blockType!=null){
+                block = new Block(blockType.newInstance(),this);
             }
             if(block==null) {
                 logger.error("No class for "+blockObject.getString("type") + " block type found");
@@ -229,7 +293,9 @@ public class Workflow {
      * @param edgesArray - JSON from frontend containing connected edges
      * @param blocks - Map of block ID to block object
      * @return
+     * @deprecated execute schedules blocks from a WorkflowGraph, which indexes the edges once per workflow
      */
+    @Deprecated
     public List<Integer> populateWaitList(JSONArray edgesArray, Map<Integer,Block>blocks){
         List<Integer>wait=new ArrayList<>();
         for(Integer blockId:blocks.keySet()){
@@ -245,7 +311,6 @@ public class Workflow {
                 int block1Id=edgeObject.getInt("block1");
                 int block2Id=edgeObject.getInt("block2");
                 Block block1 = blocks.get(block1Id);
-//                Block block2 = blocks.get(block2Id);
 
                 if(blockId==block2Id && !block1.isProcessed()){
                     readyFlag=false;
@@ -266,6 +331,9 @@ public class Workflow {
      *
      * process a workflow JSON Object
      *
+     * If an ExecutorService has been set, independent blocks are executed in parallel on it,
+     * otherwise blocks are processed one at a time in the calling thread.
+     *
      * @param jObject JSON Workflow to be executed
      * @param outputFolder Folder to save output Files into
      * @param workflowOutputFile File to constantly update the progress of the workflow
@@ -279,181 +347,394 @@ public class Workflow {
         //Accumulate and index all blocks defined in the workflow
         Map<Integer,Block> blocks=indexBlocks(blocksArray);
 
-        JSONArray edgesArray = jObject.getJSONArray("edges");
+        //Parse the edges once into an index used for scheduling
+        WorkflowGraph graph = new WorkflowGraph(jObject.getJSONArray("edges"), blocks);
 
-        Block waitBlock;
-        boolean error=false;
-        while(!error){
-            //Populate wait list
-            List<Integer>wait= populateWaitList(edgesArray,blocks);
+        Map<Integer,JSONObject> blockObjects = new HashMap<>();
+        for(int i=0;i<blocksArray.length();i++){
+            JSONObject blockObject = blocksArray.getJSONObject(i);
+            blockObjects.put(blockObject.getInt("id"), blockObject);
+        }
 
-            //Wait queue is empty, exit
-            if(wait.size()==0)break;
+        List<WorkflowListener> executionListeners = new ArrayList<>(listeners);
+        if(workflowOutputFile!=null){
+            executionListeners.add(0, new ProgressFileListener(new File(workflowOutputFile), progressInterval, progressBatchSize));
+        }
+        //Outputs are kept only until their last consumer has run
+        OutputStore outputs = new OutputStore(graph, blocks, classLoader);
+        outputs.setHeapBudget(outputHeapBudget);
+        outputs.setSpillDirectory(outputSpillDirectory);
+
+        //File properties are part of the keys of cached results
+        FileFingerprints fingerprints = null;
+        if(resultCache!=null){
+            if(fileFingerprints==null){
+                boolean remote = remoteDirectory!=null && !remoteDirectory.isEmpty();
+                fileFingerprints = new FileFingerprints(remote ? new File(remoteDirectory, FileFingerprints.INDEX_NAME) : null);
+            }
+            fingerprints = fileFingerprints;
+        }
 
-            //Process wait queue
-            for (Integer aWait : wait) {
-                boolean ready = true;
-                int waitBlockId = aWait;
-                waitBlock = blocks.get(waitBlockId);
+        Execution execution = new Execution(blocksArray, blockObjects, executionListeners, outputs, resultCache, fingerprints);
+        execution.workflowStarted();
 
-                Map<Integer, Block> dependencies = new HashMap<>();
+        boolean error = true;
+        try {
+            if(executorService!=null){
+                error = executeParallel(graph, blocks, execution, outputFolder);
+            }
+            else{
+                error = executeSequential(graph, blocks, execution, outputFolder);
+            }
+        }
+        finally {
+            outputs.close();
+            if(fingerprints!=null){
+                try {
+                    fingerprints.save();
+                }
+                catch (IOException e){
+                    logger.warn("Could not save the file fingerprints", e);
+                }
+            }
+            execution.workflowCompleted(error);
+        }
 
+        if(!error)
+            logger.info("Workflow Execution completed successfully!");
+        else
+            logger.error("Workflow Execution failed!");
+        return blocksArray;
+    }
 
-                Map<String,InputField>fields=new HashMap<>();
+    /**
+     * executeSequential - Joey Pinto
+     *
+     * Process ready blocks one at a time in the calling thread, in the order they become ready
+     *
+     * @return true if a block failed
+     */
+    private boolean executeSequential(WorkflowGraph graph, Map<Integer,Block> blocks, Execution execution, String outputFolder) throws IOException {
+        int[] inDegree = graph.getInDegrees();
+        Deque<Integer> wait = new ArrayDeque<>();
+        for(int i=0;i<graph.size();i++){
+            if(inDegree[i]==0 && !blocks.get(graph.getBlockId(i)).isProcessed())
+                wait.add(i);
+        }
 
-                
-                //Check dependencies of waiting block
-                for (int i = 0; i < edgesArray.length(); i++) {
-                    JSONObject edgeObject = edgesArray.getJSONObject(i);
+        while(!wait.isEmpty()){
+            int index = wait.poll();
+            int waitBlockId = graph.getBlockId(index);
+            logger.info("Processing block with ID "+waitBlockId);
 
-                    //Choose only edges that end on block 2
-                    if (waitBlockId != edgeObject.getInt("block2")) continue;
+            BlockResult result = new BlockTask(execution, newResult(waitBlockId, execution), blocks.get(waitBlockId), graph.getDependencies(index), graph.getFields(index)).call();
+            if(completeBlock(result, execution, outputFolder))
+                return true;
 
-                    int block1Id = edgeObject.getInt("block1");
-                    Block block1 = blocks.get(block1Id);
+            for(int successor:graph.getSuccessors(index)){
+                if(--inDegree[successor]==0) wait.add(successor);
+            }
+        }
+        return false;
+    }
 
-                    //Populate the dependencies into the maps
-                    populateDependencies(block1Id,block1,edgeObject,dependencies,fields);
+    /**
+     * executeParallel - Joey Pinto
+     *
+     * Process blocks on the configured ExecutorService. Every block whose upstream blocks have all completed is
+     * submitted immediately; a block is released as soon as the in-degree of its incoming edges drops to zero.
+     * Completed blocks are recorded in the calling thread, so the progress JSON is written by a single thread.
+     * After a failure no further blocks are submitted, but blocks already running are allowed to finish. The method
+     * only returns once no block is running, as the running blocks still read outputs and notify listeners.
+     *
+     * @return true if a block failed
+     */
+    private boolean executeParallel(WorkflowGraph graph, Map<Integer,Block> blocks, Execution execution, String outputFolder) throws IOException {
+        int[] inDegree = graph.getInDegrees();
+        CompletionService<BlockResult> completionService = new ExecutorCompletionService<>(executorService);
+        int running = 0;
+        for(int i=0;i<graph.size();i++){
+            int blockId = graph.getBlockId(i);
+            if(inDegree[i]==0 && !blocks.get(blockId).isProcessed()){
+                submit(completionService, graph, blocks, execution, i);
+                running++;
+            }
+        }
 
-                    //A dependency is unprocessed so not ready
-                    if (!block1.isProcessed()) {
-                        ready = false;
-                        break;
-                    }
-                }
+        boolean error=false;
+        boolean interrupted=false;
+        IOException outputError=null;
+        while(running>0){
+            Future<BlockResult> future;
+            try {
+                future = completionService.take();
+            }
+            catch (InterruptedException e){
+                if(!interrupted) logger.error("Interrupted while waiting for blocks to complete",e);
+                interrupted=true;
+                error=true;
+                continue;
+            }
+            running--;
 
-                if (ready) {
-                    JSONObject block=getBlockById(blocksArray,waitBlockId);
-                    logger.info("Processing block with ID "+waitBlockId);
-                    StringBuilder stdOutBuilder =new StringBuilder();
-                    StringBuilder stdErrBuilder =new StringBuilder();
-
-                    //Process the ready block
-                    Object output = null;
-                    try {
-                        output = waitBlock.processBlock(dependencies, fields, stdOutBuilder, stdErrBuilder);
-                        block.put("error",false);
-                    }
-                    catch(Exception e){
-                        logger.error(e);
-                        error=true;
-                        block.put("error",true);
-                    }
-
-                    //Assemble the output JSON
-                    JSONObject jsonObject = new JSONObject();
-                    if(output==null){
-                        jsonObject = null;
-                    }
-                    else if (output.getClass().equals(String.class)){
-                        jsonObject.put("type","STRING");
-                        jsonObject.put("value",output);
-                    }
-                    else if (output.getClass().equals(File.class)){
-                        File file = (File) output;
-                        String destinationFileName="file_"+new Date().getTime()+"_"+file.getName();
-                        FileUtils.moveFile(file,new File(outputFolder+File.separator+destinationFileName));
-                        jsonObject.put("type","FILE");
-                        JSONObject fileObject=new JSONObject();
-                        fileObject.put("title",file.getName());
-                        fileObject.put("filename",destinationFileName);
-                        jsonObject.put("value",fileObject);
-                    }
-                    else if (output.getClass().equals(Table.class)){
-                        Table table=(Table)output;
-                        jsonObject.put("type","TABLE");
-                        jsonObject.put("value",table.toJSON());
-                        File file =File.createTempFile("temp_",".csv");
-                        FileUtils.writeStringToFile(file,table.toCSV(),Charset.defaultCharset());
-                        String destinationFileName="table_"+new Date().getTime()+".csv";
-                        FileUtils.moveFile(file,new File(outputFolder+File.separator+destinationFileName));
-                        JSONObject fileObject=new JSONObject();
-                        fileObject.put("title",destinationFileName);
-                        fileObject.put("filename",destinationFileName);
-                        jsonObject.put("value",fileObject);
-                    }
-                    else if (output.getClass().equals(Graph.class)){
-                        Graph graph=(Graph)output;
-                        jsonObject.put("type","GRAPH");
-                        jsonObject.put("value",graph.toJSON());
-                        File file =File.createTempFile("temp_",".json");
-                        FileUtils.writeStringToFile(file,graph.toJSON().toString(4),Charset.defaultCharset());
-                        String destinationFileName="graph_"+new Date().getTime()+".json";
-                        FileUtils.moveFile(file,new File(outputFolder+File.separator+destinationFileName));
-                        JSONObject fileObject=new JSONObject();
-                        fileObject.put("title",destinationFileName);
-                        fileObject.put("filename",destinationFileName);
-                        jsonObject.put("value",fileObject);
-                    }
-                    else{
-                        jsonObject.put("type","");
-                        jsonObject.put("value",output.toString());
-                    }
-
-                    if (jsonObject != null)
-                        block.put("output", jsonObject);
-                    block.put("stdout", stdOutBuilder.toString());
-                    block.put("stderr", stdErrBuilder.toString());
-                    block.put("completed", true);
-
-                    //Save Present state of output to file
-                    if(workflowOutputFile!=null){
-                        File workflowOutput=new File(workflowOutputFile);
-                        FileUtils.writeStringToFile(workflowOutput,blocksArray.toString(4),Charset.defaultCharset());
-                    }
-                }
-                if(error)break;
+            BlockResult result;
+            try {
+                result = future.get();
+            }
+            catch (InterruptedException | ExecutionException e){
+                //BlockTask reports its own failures, this should never happen
+                logger.error(e);
+                error=true;
+                continue;
+            }
+
+            try {
+                if(completeBlock(result, execution, outputFolder))
+                    error=true;
+            }
+            catch (IOException e){
+                //Thrown once the remaining blocks have completed
+                if(outputError==null) outputError=e;
+                error=true;
             }
 
+            //Stop scheduling new blocks once something failed
+            if(error)continue;
+
+            for(int successor:graph.getSuccessors(graph.getIndex(result.blockId))){
+                if(--inDegree[successor]==0){
+                    submit(completionService, graph, blocks, execution, successor);
+                    running++;
+                }
+            }
         }
 
-        if(!error)
-            logger.info("Workflow Execution completed successfully!");
-        else
-            logger.error("Workflow Execution failed!");
-        return blocksArray;
+        if(interrupted) Thread.currentThread().interrupt();
+        if(outputError!=null) throw outputError;
+        return error;
     }
 
+    /**
+     * Submit a ready block for execution
+     */
+    private void submit(CompletionService<BlockResult> completionService, WorkflowGraph graph, Map<Integer,Block> blocks, Execution execution, int index) {
+        int blockId = graph.getBlockId(index);
+        logger.info("Submitting block with ID "+blockId);
+        completionService.submit(new BlockTask(execution, newResult(blockId, execution), blocks.get(blockId), graph.getDependencies(index), graph.getFields(index)));
+    }
 
+    /**
+     * Create the result of a block whose output is streamed to the listeners of the workflow
+     */
+    private BlockResult newResult(final int blockId, final Execution execution) {
+        final BlockResult result = new BlockResult(blockId, outputLimit);
+        OutputCapture.Listener listener = new OutputCapture.Listener() {
+            @Override
+            public void outputAppended(OutputCapture capture, CharSequence text) {
+                execution.blockOutput(blockId, capture, text);
+            }
+        };
+        result.stdOut.setListener(listener);
+        result.stdErr.setListener(listener);
+        return result;
+    }
 
     /**
-     * populateDependencies - Joey Pinto
+     * completeBlock - Joey Pinto
      *
-     * Populate the dependency maps of a block
+     * Record the result of a processed block in the workflow JSON and notify the listeners
      *
-     * @param block1Id - ID of block to populate dependencies
-     * @param block1 - Block object
-     * @param edgeObject - JSON containg edge definitions
-     * @param dependencies - Map of Blocks that are dependencies
-     * @param fields - Input field Annotations
+     * @param result - Result of processing the block
+     * @param execution - State of the running workflow
+     * @param outputFolder Folder to save output Files into
+     * @return true if the block failed
      */
+    private boolean completeBlock(BlockResult result, Execution execution, String outputFolder) throws IOException {
+        //Assemble the output JSON
+        long outputStart = System.nanoTime();
+        JSONObject jsonObject = getOutputJSON(result.output, outputFolder);
+        result.timings.setOutputTime(System.nanoTime() - outputStart);
+
+        JSONObject block=execution.blockObjects.get(result.blockId);
+        synchronized (execution.blocksArray) {
+            block.put("error",result.error);
+            if (jsonObject != null)
+                block.put("output", jsonObject);
+            block.put("stdout", result.stdOut.toString());
+            block.put("stderr", result.stdErr.toString());
+            block.put("completed", true);
+            block.put("metrics", result.timings.toJSON());
+        }
+
+        execution.blockCompleted(result, block);
+        return result.error;
+    }
 
-    private void populateDependencies(int block1Id, Block block1, JSONObject edgeObject, Map<Integer,Block> dependencies, Map<String,InputField> fields) {
-        JSONArray connector1 = edgeObject.getJSONArray("connector1");
-        JSONArray connector2 = edgeObject.getJSONArray("connector2");
+    /**
+     * getOutputJSON - Joey Pinto
+     *
+     * Convert the object returned by a block into its JSON representation, saving files into the output folder
+     *
+     * @param output - Object returned by the BlockExecute method
+     * @param outputFolder Folder to save output Files into
+     * @return JSON representation of the output or null if there is no output
+     */
+    private JSONObject getOutputJSON(Object output, String outputFolder) throws IOException {
+        return getOutputHandlers().writeOutput(output, new OutputContext(this, new File(outputFolder)));
+    }
 
-            InputField field;
-            if(fields.containsKey(connector2.getString(0))){
-                field = fields.get(connector2.getString(0));
+    /**
+     * Unit of work that processes a single ready block
+     */
+    private static class BlockTask implements Callable<BlockResult> {
+        private final Execution execution;
+        private final BlockResult result;
+        private final Block block;
+        private final Map<Integer,Block> dependencies;
+        private final Map<String,InputField> fields;
+
+        BlockTask(Execution execution, BlockResult result, Block block, Map<Integer, Block> dependencies, Map<String, InputField> fields) {
+            this.execution = execution;
+            this.result = result;
+            this.block = block;
+            this.dependencies = dependencies;
+            this.fields = fields;
+        }
 
+        @Override
+        public BlockResult call() {
+            result.timings.started();
+            execution.blockStarted(result, block);
+            try {
+                ResultCache cache = execution.resultCache;
+                String key = cache == null ? null : cache.key(block, fields, execution.resultKeys, execution.fingerprints);
+                ResultCache.Entry cached = key == null ? null : cache.get(key, block.getContext().getClass().getClassLoader());
+                if (cached != null) {
+                    logger.info("Using the cached result of block with ID " + result.blockId);
+                    result.stdOut.append(cached.getStdOut());
+                    result.stdErr.append(cached.getStdErr());
+                    result.output = block.restoreResult(cached);
+                    execution.outputs.skipInputs(block, fields);
+                }
+                else {
+                    result.output = block.processBlock(dependencies, fields, execution.outputs, result.stdOut, result.stdErr, result.timings);
+                    execution.outputs.releaseInputs(block);
+                    if (key != null) cache.put(key, block, result.output, result.stdOut.toString(), result.stdErr.toString());
+                }
+                //Results of the successors are keyed by the results they consume
+                if (key != null) execution.resultKeys.put(result.blockId, key);
+                execution.outputs.collect(result.blockId, block);
             }
-            else{
-                field=new InputField();
-                List<String>sourceParams = new ArrayList<>();
-                field.setSourceParam(sourceParams);
-                List<Integer>sourceBlocks = new ArrayList<>();
-                field.setSourceBlock(sourceBlocks);
-                field.setDestinationParam(connector2.getString(0));
-                fields.put(field.getDestinationParam(),field);
+            catch(Exception e){
+                logger.error(e);
+                result.error=true;
+            }
+            finally {
+                result.timings.completed();
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Outcome of processing a single block
+     */
+    private static class BlockResult {
+        private final int blockId;
+        private final OutputCapture stdOut;
+        private final OutputCapture stdErr;
+        private final BlockTimings timings = new BlockTimings();
+        private Object output;
+        private boolean error;
+
+        BlockResult(int blockId, int outputLimit) {
+            this.blockId = blockId;
+            this.stdOut = new OutputCapture(outputLimit);
+            this.stdErr = new OutputCapture(outputLimit);
+        }
+    }
+
+    /**
+     * State of a running workflow shared with the threads processing its blocks.
+     * Failures of listeners are logged and never stop the workflow.
+     */
+    private static class Execution {
+        private final JSONArray blocksArray;
+        private final Map<Integer,JSONObject> blockObjects;
+        private final List<WorkflowListener> listeners;
+        private final OutputStore outputs;
+        private final ResultCache resultCache;
+        private final FileFingerprints fingerprints;
+        private final Map<Integer,String> resultKeys = new ConcurrentHashMap<>();
+
+        Execution(JSONArray blocksArray, Map<Integer, JSONObject> blockObjects, List<WorkflowListener> listeners, OutputStore outputs, ResultCache resultCache, FileFingerprints fingerprints) {
+            this.blocksArray = blocksArray;
+            this.blockObjects = blockObjects;
+            this.listeners = listeners;
+            this.outputs = outputs;
+            this.resultCache = resultCache;
+            this.fingerprints = fingerprints;
+        }
 
+        void workflowStarted() {
+            for(WorkflowListener listener:listeners){
+                try {
+                    listener.onWorkflowStarted(blocksArray);
+                }
+                catch (RuntimeException e){
+                    logger.warn("Workflow listener failed", e);
+                }
             }
-            field.getSourceParam().add(connector1.getString(0));
-            field.getSourceBlock().add(block1Id);
+        }
 
+        void blockStarted(BlockResult result, Block block) {
+            for(WorkflowListener listener:listeners){
+                try {
+                    listener.onBlockStarted(result.blockId, block, result.stdOut, result.stdErr);
+                }
+                catch (RuntimeException e){
+                    logger.warn("Workflow listener failed", e);
+                }
+            }
+        }
 
-        dependencies.put(block1Id, block1);
+        void blockOutput(int blockId, OutputCapture capture, CharSequence text) {
+            for(WorkflowListener listener:listeners){
+                try {
+                    listener.onBlockOutput(blockId, capture, text);
+                }
+                catch (RuntimeException e){
+                    logger.warn("Workflow listener failed", e);
+                }
+            }
+        }
+
+        void blockCompleted(BlockResult result, JSONObject blockObject) {
+            for(WorkflowListener listener:listeners){
+                try {
+                    if(result.error) listener.onBlockFailed(result.blockId, blockObject, result.timings);
+                    else listener.onBlockCompleted(result.blockId, blockObject, result.output, result.timings);
+                }
+                catch (RuntimeException e){
+                    logger.warn("Workflow listener failed", e);
+                }
+            }
+        }
+
+        void workflowCompleted(boolean error) {
+            for(WorkflowListener listener:listeners){
+                try {
+                    listener.onWorkflowCompleted(blocksArray, error);
+                }
+                catch (RuntimeException e){
+                    logger.warn("Workflow listener failed", e);
+                }
+            }
+        }
     }
 
+
+
     /**
      * Get a block from the JSON workflow by id
      *
@@ -480,11 +761,201 @@ public class Workflow {
         this.jarDirectory = jarDirectory;
     }
 
+    public ExecutorService getExecutorService() {
+        return executorService;
+    }
+
+    /**
+     * Set the ExecutorService used to run independent blocks in parallel.
+     * The caller owns the ExecutorService and is responsible for shutting it down.
+     * @param executorService - executor to process blocks on, null to process blocks sequentially
+     */
+    public void setExecutorService(ExecutorService executorService) {
+        this.executorService = executorService;
+    }
+
+    public JarWorkerPool getJarWorkerPool() {
+        return jarWorkerPool;
+    }
+
+    /**
+     * Set the pool of worker JVMs used to execute runAsJar blocks.
+     * The caller owns the pool and is responsible for closing it.
+     * @param jarWorkerPool - pool to execute blocks in, null to start a new JVM for every block
+     */
+    public void setJarWorkerPool(JarWorkerPool jarWorkerPool) {
+        this.jarWorkerPool = jarWorkerPool;
+    }
+
+    public JarClassLoaderCache getJarClassLoaderCache() {
+        return jarClassLoaderCache;
+    }
+
+    /**
+     * Set the classloader cache used to execute runAsJar blocks inside this JVM.
+     * Blocks still get their own child-first classloader per module JAR, but are not protected against crashes.
+     * Takes precedence over the worker pool. The caller owns the cache and is responsible for closing it.
+     * @param jarClassLoaderCache - cache of module classloaders, null to execute blocks in external JVMs
+     */
+    public void setJarClassLoaderCache(JarClassLoaderCache jarClassLoaderCache) {
+        this.jarClassLoaderCache = jarClassLoaderCache;
+    }
+
+    public BlockDataCodec getBlockDataCodec() {
+        return blockDataCodec;
+    }
+
+    /**
+     * Set the codec used to exchange BlockData with runAsJar blocks executed in external JVMs.
+     * The codec class has to be available to the module JARs as well.
+     * @param blockDataCodec - codec, the binary codec is used by default
+     */
+    public void setBlockDataCodec(BlockDataCodec blockDataCodec) {
+        this.blockDataCodec = blockDataCodec;
+    }
+
+    /**
+     * Register a listener notified of the progress of every workflow executed by this instance.
+     * The workflow output file passed to execute is saved by a ProgressFileListener registered for that execution only.
+     * @param listener - listener to add
+     */
+    public void addListener(WorkflowListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(WorkflowListener listener) {
+        listeners.remove(listener);
+    }
+
+    public int getOutputLimit() {
+        return outputLimit;
+    }
+
+    /**
+     * @param outputLimit - Number of characters of standard output and error kept per block,
+     *                    text beyond it is dropped from the middle and replaced by a truncation marker
+     */
+    public void setOutputLimit(int outputLimit) {
+        this.outputLimit = outputLimit;
+    }
+
+    public long getProgressInterval() {
+        return progressInterval;
+    }
+
+    /**
+     * @param progressInterval - Maximum time in milliseconds a change waits before the progress file is saved
+     */
+    public void setProgressInterval(long progressInterval) {
+        this.progressInterval = progressInterval;
+    }
+
+    public int getProgressBatchSize() {
+        return progressBatchSize;
+    }
+
+    /**
+     * @param progressBatchSize - Number of completed blocks after which the progress file is saved without waiting
+     */
+    public void setProgressBatchSize(int progressBatchSize) {
+        this.progressBatchSize = progressBatchSize;
+    }
+
+    public long getOutputHeapBudget() {
+        return outputHeapBudget;
+    }
+
+    /**
+     * Outputs of processed blocks are released once every block consuming them has run. Until then the largest
+     * Serializable outputs are spilled to scratch files whenever their estimated size exceeds this budget.
+     * @param outputHeapBudget - Estimated number of bytes of outputs kept on the heap, unlimited by default
+     */
+    public void setOutputHeapBudget(long outputHeapBudget) {
+        this.outputHeapBudget = outputHeapBudget;
+    }
+
+    public File getOutputSpillDirectory() {
+        return outputSpillDirectory;
+    }
+
+    /**
+     * @param outputSpillDirectory - Directory for the scratch files of spilled outputs, the system temporary directory if null
+     */
+    public void setOutputSpillDirectory(File outputSpillDirectory) {
+        this.outputSpillDirectory = outputSpillDirectory;
+    }
+
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * Blocks whose type, module, properties and upstream results are unchanged since a cached run are not processed
+     * again, their cached result is used instead. Blocks are expected to be deterministic.
+     * @param resultCache - Cache of block results, null to process every block
+     */
+    public void setResultCache(ResultCache resultCache) {
+        this.resultCache = resultCache;
+    }
+
+    /**
+     * @return Handlers persisting block outputs, the built in ones and those the module classloader provides as services
+     */
+    public synchronized OutputHandlerRegistry getOutputHandlers() {
+        if (outputHandlers == null) {
+            outputHandlers = new OutputHandlerRegistry();
+            outputHandlers.loadServices(classLoader);
+        }
+        return outputHandlers;
+    }
+
+    public synchronized void setOutputHandlers(OutputHandlerRegistry outputHandlers) {
+        this.outputHandlers = outputHandlers;
+    }
+
+    public GraphDecimator getGraphDecimator() {
+        return graphDecimator;
+    }
+
+    /**
+     * Traces of graph outputs with more points than the budget of the decimator are decimated before they are
+     * saved. The full resolution graph is saved next to them in binary, see BinaryBlockDataCodec.decodeGraph.
+     * @param graphDecimator - Decimator of large graph outputs, null to save graphs in full resolution
+     */
+    public void setGraphDecimator(GraphDecimator graphDecimator) {
+        this.graphDecimator = graphDecimator;
+    }
+
+    public int getPreviewRows() {
+        return previewRows;
+    }
+
+    /**
+     * Table outputs are saved to CSV files, the result only references the file
+     * @param previewRows - Number of leading rows of a table output included in the result, 0 for none
+     */
+    public void setPreviewRows(int previewRows) {
+        this.previewRows = previewRows;
+    }
+
+    public int getPreviewPoints() {
+        return previewPoints;
+    }
+
+    /**
+     * Graph outputs are saved to JSON files, the result only references the file
+     * @param previewPoints - Number of points per trace of the decimated graph included in the result, 0 for none
+     */
+    public void setPreviewPoints(int previewPoints) {
+        this.previewPoints = previewPoints;
+    }
+
     public String getRemoteDirectory() {
         return remoteDirectory;
     }
 
     public void setRemoteDirectory(String remoteDirectory) {
         this.remoteDirectory = remoteDirectory;
+        this.fileFingerprints = null;
     }
 }
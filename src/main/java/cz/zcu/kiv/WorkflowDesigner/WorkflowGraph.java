@@ -0,0 +1,224 @@
+package cz.zcu.kiv.WorkflowDesigner;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.*;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2018 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * This file hosts the precompiled edge index of a workflow used to schedule the execution of its blocks
+ **********************************************************************************************************************/
+
+public class WorkflowGraph {
+
+    //Block IDs in scheduling order, the position of an ID is its index in all the arrays below
+    private final int[] blockIds;
+    private final Map<Integer,Integer> indices;
+
+    //Indices of the blocks at the start/end of each edge, one entry per edge
+    private final int[][] predecessors;
+    private final int[][] successors;
+
+    //Number of edges a block has to wait for before it is ready
+    private final int[] inDegree;
+
+    //Prebuilt wiring of each destination block
+    private final List<Map<String,InputField>> fields;
+    private final List<Map<Integer,Block>> dependencies;
+
+    /**
+     * Parse the edges of a workflow once into an index of the blocks
+     *
+     * @param edgesArray - JSON from frontend containing connected edges
+     * @param blocks - Map of block ID to block object
+     * @throws FieldMismatchException when an edge refers to a block that does not exist
+     */
+    public WorkflowGraph(JSONArray edgesArray, Map<Integer,Block> blocks) throws FieldMismatchException {
+        int size = blocks.size();
+        blockIds = new int[size];
+        indices = new HashMap<>();
+        fields = new ArrayList<>(size);
+        dependencies = new ArrayList<>(size);
+
+        int index = 0;
+        for(Integer blockId:blocks.keySet()){
+            blockIds[index] = blockId;
+            indices.put(blockId, index);
+            fields.add(new HashMap<String, InputField>());
+            dependencies.add(new HashMap<Integer, Block>());
+            index++;
+        }
+
+        int[] predecessorCount = new int[size];
+        int[] successorCount = new int[size];
+        int[][] edges = new int[edgesArray.length()][];
+
+        for(int i=0;i<edgesArray.length();i++){
+            JSONObject edgeObject = edgesArray.getJSONObject(i);
+            int block1Id = edgeObject.getInt("block1");
+            int block2Id = edgeObject.getInt("block2");
+            Integer block1 = indices.get(block1Id);
+            Integer block2 = indices.get(block2Id);
+            if(block1==null) throw new FieldMismatchException(String.valueOf(block1Id),"block");
+            if(block2==null) throw new FieldMismatchException(String.valueOf(block2Id),"block");
+
+            edges[i] = new int[]{block1, block2};
+            predecessorCount[block2]++;
+            successorCount[block1]++;
+
+            addField(edgeObject, block1Id, fields.get(block2));
+            dependencies.get(block2).put(block1Id, blocks.get(block1Id));
+        }
+
+        predecessors = new int[size][];
+        successors = new int[size][];
+        for(int i=0;i<size;i++){
+            predecessors[i] = new int[predecessorCount[i]];
+            successors[i] = new int[successorCount[i]];
+        }
+
+        //Fill adjacency arrays in edge order, reusing the counts as cursors
+        Arrays.fill(predecessorCount, 0);
+        Arrays.fill(successorCount, 0);
+        for(int[] edge:edges){
+            predecessors[edge[1]][predecessorCount[edge[1]]++] = edge[0];
+            successors[edge[0]][successorCount[edge[0]]++] = edge[1];
+        }
+
+        inDegree = new int[size];
+        for(int i=0;i<size;i++){
+            Block block = blocks.get(blockIds[i]);
+
+            //Blocks without inputs do not wait for anything
+            if(block.getInput()==null||block.getInput().isEmpty()) continue;
+            inDegree[i] = predecessors[i].length;
+        }
+
+        //The index is shared by the threads of a parallel execution, so it is made read only once built
+        for(int i=0;i<size;i++){
+            for(InputField field:fields.get(i).values()){
+                field.setSourceParam(Collections.unmodifiableList(field.getSourceParam()));
+                field.setSourceBlock(Collections.unmodifiableList(field.getSourceBlock()));
+            }
+            fields.set(i, Collections.unmodifiableMap(fields.get(i)));
+            dependencies.set(i, Collections.unmodifiableMap(dependencies.get(i)));
+        }
+    }
+
+    /**
+     * Add the connection described by an edge to the input fields of its destination block
+     *
+     * @param edgeObject - JSON containg edge definitions
+     * @param block1Id - ID of block at the start of the edge
+     * @param fields - Input fields of the block at the end of the edge
+     */
+    private static void addField(JSONObject edgeObject, int block1Id, Map<String,InputField> fields) {
+        JSONArray connector1 = edgeObject.getJSONArray("connector1");
+        JSONArray connector2 = edgeObject.getJSONArray("connector2");
+
+        InputField field = fields.get(connector2.getString(0));
+        if(field==null){
+            field = new InputField(new ArrayList<String>(), new ArrayList<Integer>(), connector2.getString(0));
+            fields.put(field.getDestinationParam(), field);
+        }
+        field.getSourceParam().add(connector1.getString(0));
+        field.getSourceBlock().add(block1Id);
+    }
+
+    /**
+     * @return number of blocks in the workflow
+     */
+    public int size() {
+        return blockIds.length;
+    }
+
+    /**
+     * @param index - index of a block
+     * @return ID of the block
+     */
+    public int getBlockId(int index) {
+        return blockIds[index];
+    }
+
+    /**
+     * @param blockId - ID of a block
+     * @return index of the block or -1 if it is not part of the workflow
+     */
+    public int getIndex(int blockId) {
+        Integer index = indices.get(blockId);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @param index - index of a block
+     * @return indices of the blocks connected to the inputs of a block, one per edge
+     */
+    public int[] getPredecessors(int index) {
+        return predecessors[index].clone();
+    }
+
+    /**
+     * @param index - index of a block
+     * @return indices of the blocks connected to the outputs of a block, one per edge
+     */
+    public int[] getSuccessors(int index) {
+        return successors[index].clone();
+    }
+
+    /**
+     * @return copy of the number of edges each block has to wait for before it is ready
+     */
+    public int[] getInDegrees() {
+        return inDegree.clone();
+    }
+
+    /**
+     * @param index - index of a block
+     * @return read only mapping of input field name to the fields connected to it
+     */
+    public Map<String, InputField> getFields(int index) {
+        return fields.get(index);
+    }
+
+    /**
+     * @param index - index of a block
+     * @return read only map of Blocks that are dependencies of a block
+     */
+    public Map<Integer, Block> getDependencies(int index) {
+        return dependencies.get(index);
+    }
+
+    /**
+     * Check if all dependencies of a block have been processed
+     * @param index - index of a block
+     * @param blocks - Map of block ID to block object
+     * @return true if the block can be processed
+     */
+    public boolean isReady(int index, Map<Integer,Block> blocks) {
+        if(inDegree[index]==0) return true;
+        for(int predecessor:predecessors[index]){
+            if(!blocks.get(blockIds[predecessor]).isProcessed()) return false;
+        }
+        return true;
+    }
+}
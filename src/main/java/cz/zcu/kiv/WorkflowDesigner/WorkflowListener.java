@@ -0,0 +1,79 @@
+package cz.zcu.kiv.WorkflowDesigner;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2018 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * This file hosts the interface used to observe the execution of a workflow.
+ * Listeners are registered on a Workflow and notified as blocks start, print output, complete or fail.
+ **********************************************************************************************************************/
+
+public interface WorkflowListener {
+
+    /**
+     * Called before the first block is processed
+     * @param blocksArray - JSON blocks of the workflow, locked by the workflow while it is modified
+     */
+    void onWorkflowStarted(JSONArray blocksArray);
+
+    /**
+     * Called from the thread processing the block before it starts
+     * @param blockId - ID of the block
+     * @param block - block being processed
+     * @param stdOut - live standard output of the block
+     * @param stdErr - live standard error of the block
+     */
+    void onBlockStarted(int blockId, Block block, OutputCapture stdOut, OutputCapture stdErr);
+
+    /**
+     * Called whenever a block prints something, possibly from a thread reading the output of an external process
+     * @param blockId - ID of the block
+     * @param capture - stdOut or stdErr capture passed to onBlockStarted
+     * @param text - text that was appended to the capture
+     */
+    void onBlockOutput(int blockId, OutputCapture capture, CharSequence text);
+
+    /**
+     * Called once the result of a successful block has been recorded in its JSON
+     * @param blockId - ID of the block
+     * @param blockObject - JSON of the block holding its output
+     * @param output - object returned by the BlockExecute method
+     * @param timings - timings of the block
+     */
+    void onBlockCompleted(int blockId, JSONObject blockObject, Object output, BlockTimings timings);
+
+    /**
+     * Called once the failure of a block has been recorded in its JSON
+     * @param blockId - ID of the block
+     * @param blockObject - JSON of the block holding its error output
+     * @param timings - timings of the block
+     */
+    void onBlockFailed(int blockId, JSONObject blockObject, BlockTimings timings);
+
+    /**
+     * Called after the last block has been processed or the workflow stopped because of a failure
+     * @param blocksArray - JSON blocks of the workflow
+     * @param error - true if a block failed
+     */
+    void onWorkflowCompleted(JSONArray blocksArray, boolean error);
+}
@@ -0,0 +1,56 @@
+package cz.zcu.kiv.WorkflowDesigner;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2018 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * This file hosts an empty implementation of WorkflowListener.
+ * Listeners interested in a few events only extend it and override those.
+ **********************************************************************************************************************/
+
+public abstract class WorkflowListenerAdapter implements WorkflowListener {
+
+    @Override
+    public void onWorkflowStarted(JSONArray blocksArray) {
+    }
+
+    @Override
+    public void onBlockStarted(int blockId, Block block, OutputCapture stdOut, OutputCapture stdErr) {
+    }
+
+    @Override
+    public void onBlockOutput(int blockId, OutputCapture capture, CharSequence text) {
+    }
+
+    @Override
+    public void onBlockCompleted(int blockId, JSONObject blockObject, Object output, BlockTimings timings) {
+    }
+
+    @Override
+    public void onBlockFailed(int blockId, JSONObject blockObject, BlockTimings timings) {
+    }
+
+    @Override
+    public void onWorkflowCompleted(JSONArray blocksArray, boolean error) {
+    }
+}
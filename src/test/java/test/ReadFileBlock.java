@@ -0,0 +1,29 @@
+package test;
+
+import cz.zcu.kiv.WorkflowDesigner.Annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+
+import static cz.zcu.kiv.WorkflowDesigner.Type.FILE;
+import static cz.zcu.kiv.WorkflowDesigner.Type.STRING;
+
+@BlockType(type ="READ_FILE", family = "IO")
+public class ReadFileBlock implements Serializable {
+
+    @BlockProperty(name = "File", type = FILE)
+    private File file;
+
+    @BlockOutput(name = "Content", type = STRING)
+    private String content;
+
+    @BlockExecute
+    public String process() throws IOException {
+        System.err.println("Reading "+file.getName());
+        content = new String(Files.readAllBytes(file.toPath()), "UTF-8");
+        System.out.println("Read "+content.length()+" characters");
+        return content;
+    }
+}
@@ -1,15 +1,79 @@
 package test;
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockExecute;
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockProperty;
+import cz.zcu.kiv.WorkflowDesigner.BinaryBlockDataCodec;
+import cz.zcu.kiv.WorkflowDesigner.Block;
+import cz.zcu.kiv.WorkflowDesigner.BlockData;
+import cz.zcu.kiv.WorkflowDesigner.BlockMetadata;
+import cz.zcu.kiv.WorkflowDesigner.BlockProtocol;
+import cz.zcu.kiv.WorkflowDesigner.BlockRegistry;
+import cz.zcu.kiv.WorkflowDesigner.BlockTimings;
 import cz.zcu.kiv.WorkflowDesigner.FieldMismatchException;
+import cz.zcu.kiv.WorkflowDesigner.FileFingerprints;
+import cz.zcu.kiv.WorkflowDesigner.InputField;
+import cz.zcu.kiv.WorkflowDesigner.JarClassLoaderCache;
+import cz.zcu.kiv.WorkflowDesigner.JarWorkerPool;
+import cz.zcu.kiv.WorkflowDesigner.MetricsRegistry;
+import cz.zcu.kiv.WorkflowDesigner.OutputCapture;
+import cz.zcu.kiv.WorkflowDesigner.OutputContext;
+import cz.zcu.kiv.WorkflowDesigner.OutputHandler;
+import cz.zcu.kiv.WorkflowDesigner.OutputHandlerRegistry;
+import cz.zcu.kiv.WorkflowDesigner.OutputStore;
+import cz.zcu.kiv.WorkflowDesigner.ResultCache;
+import cz.zcu.kiv.WorkflowDesigner.Type;
+import cz.zcu.kiv.WorkflowDesigner.Visualizations.ColumnarTable;
+import cz.zcu.kiv.WorkflowDesigner.Visualizations.JsonWriter;
+import cz.zcu.kiv.WorkflowDesigner.Visualizations.PlotlyGraphs.Coordinate;
+import cz.zcu.kiv.WorkflowDesigner.Visualizations.PlotlyGraphs.Axis;
+import cz.zcu.kiv.WorkflowDesigner.Visualizations.PlotlyGraphs.Graph;
+import cz.zcu.kiv.WorkflowDesigner.Visualizations.PlotlyGraphs.GraphDecimator;
+import cz.zcu.kiv.WorkflowDesigner.Visualizations.PlotlyGraphs.Layout;
+import cz.zcu.kiv.WorkflowDesigner.Visualizations.PlotlyGraphs.Marker;
+import cz.zcu.kiv.WorkflowDesigner.Visualizations.PlotlyGraphs.Point;
+import cz.zcu.kiv.WorkflowDesigner.Visualizations.PlotlyGraphs.Trace;
+import cz.zcu.kiv.WorkflowDesigner.Visualizations.PlotlyGraphs.TraceMode;
+import cz.zcu.kiv.WorkflowDesigner.Visualizations.Table;
 import cz.zcu.kiv.WorkflowDesigner.Workflow;
+import cz.zcu.kiv.WorkflowDesigner.WorkflowGraph;
+import cz.zcu.kiv.WorkflowDesigner.WorkflowListenerAdapter;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.SerializationUtils;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.StringWriter;
 import java.lang.reflect.InvocationTargetException;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.net.URLClassLoader;
 import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.jar.JarEntry;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
 
 
 /***********************************************************************************************************************
@@ -43,7 +107,85 @@ public class WorkflowDesignerTest {
     @Test
     public void testBlock() throws NoSuchMethodException, InstantiationException, IllegalAccessException, InvocationTargetException {
         JSONArray blocksArray=new Workflow(ClassLoader.getSystemClassLoader(),":test",null,"").initializeBlocks();
-        assert blocksArray.length()==4;
+        assert blocksArray.length()==6;
+    }
+
+    @Test
+    public void testBlockIndex() throws IOException {
+        BlockRegistry registry = BlockRegistry.load(ClassLoader.getSystemClassLoader());
+        assert registry.getEntries("test").size()==6;
+        for(BlockRegistry.Entry entry:registry.getEntries("test")){
+            if(entry.getType().equals("ARITHMETIC")){
+                assert entry.getClassName().equals(ArithmeticBlock.class.getName());
+                assert entry.getInputs().size()==2;
+                assert entry.getOutputsByName().containsKey("Operand3");
+                assert entry.getPropertiesByName().get("Operation").getDefaultValue().equals("add");
+                assert entry.getExecuteMethod().equals("process");
+            }
+        }
+    }
+
+    @Test
+    public void testPartialBlockIndex() throws Exception {
+        //A module built without the annotation processor adds a block to the indexed test package
+        File module = Files.createTempDirectory("testPartialBlockIndex").toFile();
+        try {
+            compile(module, "test.UnindexedBlock", "package test;\n"
+                    + "@cz.zcu.kiv.WorkflowDesigner.Annotations.BlockType(type = \"UNINDEXED\", family = \"MATH\")\n"
+                    + "public class UnindexedBlock {\n"
+                    + "    @cz.zcu.kiv.WorkflowDesigner.Annotations.BlockExecute\n"
+                    + "    public void process() {}\n"
+                    + "}\n");
+            URLClassLoader classLoader = new URLClassLoader(new URL[]{module.toURI().toURL()}, ClassLoader.getSystemClassLoader());
+            Workflow workflow = new Workflow(classLoader, ":test", null, "");
+            Map<String, Class<?>> blockTypes = workflow.getBlockTypes();
+            assert blockTypes.size() == 7;
+            assert blockTypes.get("UNINDEXED").getName().equals("test.UnindexedBlock");
+            assert blockTypes.get("ARITHMETIC") == ArithmeticBlock.class;
+        }
+        finally {
+            FileUtils.deleteQuietly(module);
+        }
+    }
+
+    @Test
+    public void testBlockMetadata() throws Exception {
+        BlockMetadata metadata = BlockMetadata.of(ArithmeticBlock.class);
+        assert metadata == BlockMetadata.of(ArithmeticBlock.class);
+        assert metadata.getInputs().keySet().containsAll(java.util.Arrays.asList("Operand1","Operand2"));
+
+        ArithmeticBlock block = new ArithmeticBlock();
+        metadata.getInputs().get("Operand1").set(block, 4);
+        metadata.getInputs().get("Operand2").set(block, 3);
+        metadata.getProperties().get("Operation").set(block, "multiply");
+        assert metadata.execute(block).equals("12");
+        assert metadata.getOutputs().get("Operand3").get(block).equals(12);
+    }
+
+    public static class StaticExecuteBlock {
+        @BlockExecute
+        public static String process() {
+            return "static";
+        }
+    }
+
+    public static class ParameterizedExecuteBlock {
+        @BlockExecute
+        public String process(int value) {
+            return String.valueOf(value);
+        }
+    }
+
+    @Test
+    public void testBlockExecuteSignature() throws Exception {
+        assert BlockMetadata.of(StaticExecuteBlock.class).execute(new StaticExecuteBlock()).equals("static");
+        try {
+            BlockMetadata.of(ParameterizedExecuteBlock.class);
+            assert false;
+        }
+        catch (IllegalArgumentException e) {
+            assert e.getMessage().contains(ParameterizedExecuteBlock.class.getName());
+        }
     }
 
     @Test
@@ -60,6 +202,847 @@ public class WorkflowDesignerTest {
         assert jsonArray.length() == 3;
     }
 
+    @Test
+    public void testProcessBlockStringBuilder() throws Exception {
+        String json = FileUtils.readFileToString(new File("test_data/test.json"),Charset.defaultCharset());
+        Workflow workflow = new Workflow(ClassLoader.getSystemClassLoader(), ":test",null,"");
+        Map<Integer, Block> blocks = workflow.indexBlocks(new JSONObject(json).getJSONArray("blocks"));
+        StringBuilder stdOut = new StringBuilder();
+        StringBuilder stdErr = new StringBuilder();
+        blocks.get(2).processBlock(blocks, new HashMap<String, InputField>(), stdOut, stdErr);
+        assert blocks.get(2).isProcessed();
+        assert stdErr.length() == 0;
+    }
+
+    @Test
+    public void testParallelArithmetic() throws IOException, NoSuchMethodException, InstantiationException, IllegalAccessException, InvocationTargetException, FieldMismatchException {
+
+        String json = FileUtils.readFileToString(new File("test_data/test.json"),Charset.defaultCharset());
+        JSONObject jsonObject = new JSONObject(json);
+        File outputFile = File.createTempFile("testParallelArithmetic",".json");
+        outputFile.deleteOnExit();
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            Workflow workflow = new Workflow(ClassLoader.getSystemClassLoader(), ":test", null, "");
+            workflow.setExecutorService(executorService);
+            JSONArray jsonArray = workflow.execute(jsonObject, "test_data", outputFile.getAbsolutePath());
+
+            assert jsonArray != null;
+            assert jsonArray.getJSONObject(0).getJSONObject("output").getInt("value") == 15;
+            assert jsonArray.length() == 3;
+            for (int i = 0; i < jsonArray.length(); i++) {
+                assert jsonArray.getJSONObject(i).getBoolean("completed");
+                assert !jsonArray.getJSONObject(i).getBoolean("error");
+            }
+        }
+        finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void testParallelFailure() throws Exception {
+        JSONObject jsonObject = new JSONObject(FileUtils.readFileToString(new File("test_data/test.json"),Charset.defaultCharset()));
+        //Unconnected block that is still running when the output of the ARITHMETIC block fails to be saved
+        JSONObject slowBlock = new JSONObject(jsonObject.getJSONArray("blocks").getJSONObject(1).toString());
+        jsonObject.getJSONArray("blocks").put(slowBlock.put("id", 4));
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            Workflow workflow = new Workflow(ClassLoader.getSystemClassLoader(), ":test", null, "");
+            workflow.setExecutorService(executorService);
+            workflow.getOutputHandlers().register(new OutputHandler<String>() {
+                @Override
+                public Class<String> getOutputType() {
+                    return String.class;
+                }
+
+                @Override
+                public JSONObject writeOutput(String output, OutputContext context) throws IOException {
+                    throw new IOException("Output folder is not writable");
+                }
+            });
+            workflow.addListener(new WorkflowListenerAdapter() {
+                @Override
+                public void onBlockStarted(int blockId, Block block, OutputCapture stdOut, OutputCapture stdErr) {
+                    if (blockId == 4) {
+                        try {
+                            Thread.sleep(500);
+                        }
+                        catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    events.add("started " + blockId);
+                }
+
+                @Override
+                public void onWorkflowCompleted(JSONArray blocksArray, boolean error) {
+                    events.add("workflow " + error);
+                }
+            });
+
+            try {
+                workflow.execute(jsonObject, "test_data", null);
+                assert false;
+            }
+            catch (IOException e) {
+                assert e.getMessage().equals("Output folder is not writable");
+            }
+            assert events.contains("started 4");
+            assert events.get(events.size() - 1).equals("workflow true");
+        }
+        finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void testSpilledOutputs() throws IOException, NoSuchMethodException, InstantiationException, IllegalAccessException, InvocationTargetException, FieldMismatchException {
+
+        String json = FileUtils.readFileToString(new File("test_data/test.json"),Charset.defaultCharset());
+        JSONObject jsonObject = new JSONObject(json);
+        File spillDirectory = Files.createTempDirectory("testSpilledOutputs").toFile();
+        try {
+            Workflow workflow = new Workflow(ClassLoader.getSystemClassLoader(), ":test", null, "");
+            //Every output is spilled to disk and read back by its consumer
+            workflow.setOutputHeapBudget(0);
+            workflow.setOutputSpillDirectory(spillDirectory);
+            JSONArray jsonArray = workflow.execute(jsonObject, "test_data", null);
+
+            assert jsonArray.getJSONObject(0).getJSONObject("output").getInt("value") == 15;
+            assert spillDirectory.list().length == 0;
+        }
+        finally {
+            FileUtils.deleteQuietly(spillDirectory);
+        }
+    }
+
+    @Test
+    public void testSpilledTable() throws Exception {
+        JSONObject jsonObject = new JSONObject(FileUtils.readFileToString(new File("test_data/test.json"),Charset.defaultCharset()));
+        Workflow workflow = new Workflow(ClassLoader.getSystemClassLoader(), ":test", null, "");
+        Map<Integer, Block> blocks = workflow.indexBlocks(jsonObject.getJSONArray("blocks"));
+        WorkflowGraph graph = new WorkflowGraph(jsonObject.getJSONArray("edges"), blocks);
+
+        //Tables and graphs of several megabytes stand in for the outputs of the constants consumed by block 1
+        List<List<String>> rows = new ArrayList<>();
+        for (int i = 0; i < 100000; i++) rows.add(Arrays.asList(String.valueOf(i), "12345.678", "label " + i));
+        Table table = new Table();
+        table.setRows(rows);
+        Trace trace = new Trace();
+        trace.setCoordinates(new double[500000], new double[500000]);
+        Graph plot = new Graph();
+        plot.setTraces(Collections.singletonList(trace));
+
+        try (OutputStore outputs = new OutputStore(graph, blocks, ClassLoader.getSystemClassLoader())) {
+            outputs.setHeapBudget(1 << 20);
+            outputs.put(2, "Operand", table);
+            assert outputs.getSpilledCount() == 1 && outputs.getHeapSize() == 0;
+            outputs.put(3, "Operand", plot);
+            assert outputs.getSpilledCount() == 2 && outputs.getHeapSize() == 0;
+
+            assert ((Table) outputs.take(2, "Operand")).getRows().size() == 100000;
+            assert ((Graph) outputs.take(3, "Operand")).getTraces().get(0).size() == 500000;
+        }
+    }
+
+    @Test
+    public void testSpilledModuleOutput() throws Exception {
+        JSONObject jsonObject = new JSONObject(FileUtils.readFileToString(new File("test_data/test.json"),Charset.defaultCharset()));
+        Workflow workflow = new Workflow(ClassLoader.getSystemClassLoader(), ":test", null, "");
+        Map<Integer, Block> blocks = workflow.indexBlocks(jsonObject.getJSONArray("blocks"));
+        WorkflowGraph graph = new WorkflowGraph(jsonObject.getJSONArray("edges"), blocks);
+
+        //A class only the classloader of a module can load, held inside a class of the bootstrap loader
+        File module = Files.createTempDirectory("testSpilledModuleOutput").toFile();
+        try {
+            compile(module, "test.ModuleValue", "package test;\npublic class ModuleValue implements java.io.Serializable {}\n");
+            URLClassLoader moduleLoader = new URLClassLoader(new URL[]{module.toURI().toURL()}, ClassLoader.getSystemClassLoader());
+            Class<?> valueClass = moduleLoader.loadClass("test.ModuleValue");
+
+            try (OutputStore outputs = new OutputStore(graph, blocks, ClassLoader.getSystemClassLoader())) {
+                outputs.setHeapBudget(0);
+                outputs.put(2, "Operand", new ArrayList<>(Collections.singletonList(valueClass.newInstance())));
+                assert outputs.getSpilledCount() == 1;
+                assert ((List<?>) outputs.take(2, "Operand")).get(0).getClass() == valueClass;
+            }
+        }
+        finally {
+            FileUtils.deleteQuietly(module);
+        }
+    }
+
+    @Test
+    public void testResultCache() throws IOException, NoSuchMethodException, InstantiationException, IllegalAccessException, InvocationTargetException, FieldMismatchException {
+
+        String json = FileUtils.readFileToString(new File("test_data/test.json"),Charset.defaultCharset());
+        File cacheDirectory = Files.createTempDirectory("testResultCache").toFile();
+        try {
+            ResultCache cache = new ResultCache(cacheDirectory, 1 << 20);
+            Workflow workflow = new Workflow(ClassLoader.getSystemClassLoader(), ":test", null, "");
+            workflow.setResultCache(cache);
+
+            JSONArray jsonArray = workflow.execute(new JSONObject(json), "test_data", null);
+            assert jsonArray.getJSONObject(0).getJSONObject("output").getInt("value") == 15;
+            assert cache.getMissCount() == 3 && cache.getHitCount() == 0;
+
+            //An unchanged workflow is served from the cache, even after reopening it
+            cache = new ResultCache(cacheDirectory, 1 << 20);
+            workflow.setResultCache(cache);
+            jsonArray = workflow.execute(new JSONObject(json), "test_data", null);
+            assert jsonArray.getJSONObject(0).getJSONObject("output").getInt("value") == 15;
+            assert cache.getMissCount() == 0 && cache.getHitCount() == 3;
+
+            //Only the block whose property changed is processed again
+            JSONObject jsonObject = new JSONObject(json);
+            jsonObject.getJSONArray("blocks").getJSONObject(0).getJSONObject("values").put("Operation", "subtract");
+            jsonArray = workflow.execute(jsonObject, "test_data", null);
+            assert jsonArray.getJSONObject(0).getJSONObject("output").getInt("value") == 5;
+            assert cache.getMissCount() == 1 && cache.getHitCount() == 5;
+        }
+        finally {
+            FileUtils.deleteQuietly(cacheDirectory);
+        }
+    }
+
+    @Test
+    public void testResultCacheFiles() throws IOException, NoSuchMethodException, InstantiationException, IllegalAccessException, InvocationTargetException, FieldMismatchException {
+        String json = "{\"edges\":[],\"blocks\":[{\"id\":1,\"type\":\"READ_FILE\",\"module\":\"test.jar:test\",\"values\":{\"File\":\"input.txt\"}}]}";
+        File cacheDirectory = Files.createTempDirectory("testResultCacheFiles").toFile();
+        File remoteDirectory = Files.createTempDirectory("testResultCacheFiles").toFile();
+        File outputFolder = Files.createTempDirectory("testResultCacheFiles").toFile();
+        try {
+            ResultCache cache = new ResultCache(cacheDirectory, 1 << 20);
+            Workflow workflow = new Workflow(ClassLoader.getSystemClassLoader(), ":test", null, remoteDirectory.getAbsolutePath());
+            workflow.setResultCache(cache);
+
+            File input = new File(remoteDirectory, "input.txt");
+            FileUtils.writeStringToFile(input, "first", "UTF-8");
+            JSONArray jsonArray = workflow.execute(new JSONObject(json), outputFolder.getAbsolutePath(), null);
+            assert jsonArray.getJSONObject(0).getJSONObject("output").getString("value").equals("first");
+
+            //The same workflow reading different content is processed again
+            FileUtils.writeStringToFile(input, "second run", "UTF-8");
+            jsonArray = workflow.execute(new JSONObject(json), outputFolder.getAbsolutePath(), null);
+            assert jsonArray.getJSONObject(0).getJSONObject("output").getString("value").equals("second run");
+            assert cache.getMissCount() == 2 && cache.getHitCount() == 0;
+
+            jsonArray = workflow.execute(new JSONObject(json), outputFolder.getAbsolutePath(), null);
+            assert jsonArray.getJSONObject(0).getJSONObject("output").getString("value").equals("second run");
+            assert cache.getMissCount() == 2 && cache.getHitCount() == 1;
+        }
+        finally {
+            FileUtils.deleteQuietly(cacheDirectory);
+            FileUtils.deleteQuietly(remoteDirectory);
+            FileUtils.deleteQuietly(outputFolder);
+        }
+    }
+
+    public static class FileListBlock {
+        @BlockProperty(name = "Files", type = Type.FILE_ARRAY)
+        public List<File> files;
+
+        @BlockProperty(name = "Options", type = Type.STRING)
+        public Object options;
+
+        @BlockExecute
+        public void process() {
+        }
+    }
+
+    @Test
+    public void testResultCacheProperties() throws Exception {
+        File cacheDirectory = Files.createTempDirectory("testResultCacheProperties").toFile();
+        try {
+            ResultCache cache = new ResultCache(cacheDirectory, 1 << 20);
+            Workflow workflow = new Workflow(ClassLoader.getSystemClassLoader(), ":test", null, "");
+            workflow.setResultCache(cache);
+            String json = "{\"edges\":[],\"blocks\":[{\"id\":1,\"type\":\"CONCATENATE\",\"module\":\"test.jar:test\",\"values\":{\"Strings\":[\"A\",\"B\"]}}]}";
+            String reordered = json.replace("[\"A\",\"B\"]", "[\"B\",\"A\"]");
+
+            assert workflow.execute(new JSONObject(json), "test_data", null).getJSONObject(0).getJSONObject("output").getString("value").equals("AB");
+            assert workflow.execute(new JSONObject(json), "test_data", null).getJSONObject(0).getJSONObject("output").getString("value").equals("AB");
+            assert cache.getMissCount() == 1 && cache.getHitCount() == 1;
+            assert workflow.execute(new JSONObject(reordered), "test_data", null).getJSONObject(0).getJSONObject("output").getString("value").equals("BA");
+            assert cache.getMissCount() == 2 && cache.getHitCount() == 1;
+            assert workflow.execute(new JSONObject(json), "test_data", null).getJSONObject(0).getJSONObject("output").getString("value").equals("AB");
+            assert cache.getMissCount() == 2 && cache.getHitCount() == 2;
+
+            //Files inside lists are keyed by their content, values without a deterministic key are not cached
+            File file = new File(cacheDirectory, "input.txt");
+            FileUtils.writeStringToFile(file, "one", "UTF-8");
+            FileListBlock context = new FileListBlock();
+            context.files = Collections.singletonList(file);
+            context.options = new HashSet<>(Arrays.asList("x", "y"));
+            Block block = new Block(context, workflow);
+            FileFingerprints fingerprints = new FileFingerprints(null);
+            Map<Integer, String> upstreamKeys = Collections.emptyMap();
+            String key = cache.key(block, new HashMap<String, InputField>(), upstreamKeys, fingerprints);
+            context.options = new LinkedHashSet<>(Arrays.asList("y", "x"));
+            assert key.equals(cache.key(block, new HashMap<String, InputField>(), upstreamKeys, fingerprints));
+            FileUtils.writeStringToFile(file, "two!", "UTF-8");
+            assert !key.equals(cache.key(block, new HashMap<String, InputField>(), upstreamKeys, fingerprints));
+            context.options = new Object();
+            assert cache.key(block, new HashMap<String, InputField>(), upstreamKeys, fingerprints) == null;
+        }
+        finally {
+            FileUtils.deleteQuietly(cacheDirectory);
+        }
+    }
+
+    @Test
+    public void testResultCacheModuleOutput() throws Exception {
+        File cacheDirectory = Files.createTempDirectory("testResultCacheModuleOutput").toFile();
+        try {
+            //Output of a class that only the classloader of the module can load
+            File module = new File(cacheDirectory, "module");
+            compile(module, "test.ModuleValue", "package test;\npublic class ModuleValue implements java.io.Serializable {}\n");
+            URLClassLoader moduleLoader = new URLClassLoader(new URL[]{module.toURI().toURL()}, ClassLoader.getSystemClassLoader());
+            Object value = moduleLoader.loadClass("test.ModuleValue").newInstance();
+
+            ResultCache cache = new ResultCache(cacheDirectory, 1 << 20);
+            Workflow workflow = new Workflow(ClassLoader.getSystemClassLoader(), ":test", null, "");
+            JSONObject blockObject = new JSONObject("{\"id\":1,\"type\":\"CONSTANT\",\"module\":\"test.jar:test\",\"values\":{\"Value\":\"3\"}}");
+            Block block = workflow.indexBlocks(new JSONArray().put(blockObject)).get(1);
+            assert cache.put("module", block, value, "", "");
+
+            ResultCache.Entry entry = cache.get("module", moduleLoader);
+            assert entry != null && entry.getProcessOutput().getClass() == value.getClass();
+            assert cache.getHitCount() == 1;
+        }
+        finally {
+            FileUtils.deleteQuietly(cacheDirectory);
+        }
+    }
+
+    @Test
+    public void testFileFingerprints() throws IOException {
+        File remoteDirectory = Files.createTempDirectory("testFileFingerprints").toFile();
+        try {
+            File index = new File(remoteDirectory, FileFingerprints.INDEX_NAME);
+            File data = new File(remoteDirectory, "data.csv");
+            FileUtils.writeStringToFile(data, "1,2,3", Charset.defaultCharset());
+            //Files modified just before they are hashed are always hashed again
+            data.setLastModified(System.currentTimeMillis() - 60000);
+
+            FileFingerprints fingerprints = new FileFingerprints(index);
+            String hash = fingerprints.fingerprint(data);
+            assert hash.equals(fingerprints.fingerprint(data));
+            assert fingerprints.getHashCount() == 1;
+            fingerprints.save();
+
+            //A new run reuses the index without reading the file
+            fingerprints = new FileFingerprints(index);
+            assert hash.equals(fingerprints.fingerprint(data));
+            assert fingerprints.getHashCount() == 0;
+
+            FileUtils.writeStringToFile(data, "1,2,4", Charset.defaultCharset());
+            assert !hash.equals(fingerprints.fingerprint(data));
+            assert fingerprints.getHashCount() == 1;
+        }
+        finally {
+            FileUtils.deleteQuietly(remoteDirectory);
+        }
+    }
+
+    @Test
+    public void testJarWorkerPool() throws Exception {
+        //The test classpath stands in for a module JAR
+        File classpath = new File(System.getProperty("java.class.path"));
+        try (JarWorkerPool pool = new JarWorkerPool()) {
+            pool.setPoolSize(1);
+            pool.setMaxRequestsPerWorker(2);
+            for (int i = 0; i < 3; i++) {
+                BlockData blockData = new BlockData("ARITHMETIC");
+                blockData.getInput().put("Operand1", i);
+                blockData.getInput().put("Operand2", 5);
+                blockData.getProperties().put("Operation", "add");
+                OutputCapture stdOut = new OutputCapture();
+                OutputCapture stdErr = new OutputCapture();
+
+                BlockData result = pool.execute(classpath, "test", blockData, stdOut, stdErr);
+                assert result.getProcessOutput().equals(String.valueOf(i + 5));
+                assert result.getOutput().get("Operand3").equals(i + 5);
+            }
+        }
+    }
+
+    @Test
+    public void testJarProcess() throws Exception {
+        //The module JAR references the test classpath in its manifest and bundles an older copy of the library
+        File jarDirectory = Files.createTempDirectory("testJarProcess").toFile();
+        StringBuilder classPath = new StringBuilder();
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            classPath.append(new File(entry).toURI()).append(' ');
+        }
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.CLASS_PATH, classPath.toString().trim());
+        File staleLibrary = new File(jarDirectory, "stale");
+        compile(staleLibrary, "cz.zcu.kiv.WorkflowDesigner.Block", "package cz.zcu.kiv.WorkflowDesigner;\npublic class Block {}\n");
+        try (JarOutputStream jar = new JarOutputStream(new FileOutputStream(new File(jarDirectory, "module.jar")), manifest)) {
+            jar.putNextEntry(new JarEntry("cz/zcu/kiv/WorkflowDesigner/Block.class"));
+            FileUtils.copyFile(new File(staleLibrary, "cz/zcu/kiv/WorkflowDesigner/Block.class"), jar);
+            jar.closeEntry();
+        }
+
+        //Large enough for the result to span several chunks
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 50000; i++) content.append("\u00e9\u20ac").append(i);
+        FileUtils.writeStringToFile(new File(jarDirectory, "input.txt"), content.toString(), "UTF-8");
+
+        try {
+            Workflow workflow = new Workflow(ClassLoader.getSystemClassLoader(), "module.jar:test", jarDirectory.getAbsolutePath(), jarDirectory.getAbsolutePath());
+            JSONObject blockObject = new JSONObject("{\"id\":1,\"type\":\"READ_FILE\",\"module\":\"module.jar:test\",\"values\":{\"File\":\"input.txt\"}}");
+            Map<Integer, Block> blocks = workflow.indexBlocks(new JSONArray().put(blockObject));
+            Block block = blocks.get(1);
+            block.setModule("module.jar:test");
+            block.setJarExecutable(true);
+
+            OutputCapture stdOut = new OutputCapture();
+            OutputCapture stdErr = new OutputCapture();
+            Object output = block.processBlock(blocks, new HashMap<String, InputField>(), stdOut, stdErr);
+            assert output.equals(content.toString());
+            assert stdOut.toString().equals("Read " + content.length() + " characters" + System.lineSeparator());
+            //The worker also logs to its standard error
+            assert stdErr.toString().contains("Reading input.txt" + System.lineSeparator());
+
+            //Temporary files created by the block outlive its JVM until the workflow has saved them
+            blockObject = new JSONObject("{\"id\":2,\"type\":\"WRITE_FILE\",\"module\":\"module.jar:test\",\"values\":{\"Content\":\"written\"}}");
+            blocks = workflow.indexBlocks(new JSONArray().put(blockObject));
+            block = blocks.get(2);
+            block.setModule("module.jar:test");
+            block.setJarExecutable(true);
+            File written = (File) block.processBlock(blocks, new HashMap<String, InputField>(), new OutputCapture(), new OutputCapture());
+            assert FileUtils.readFileToString(written, "UTF-8").equals("written");
+            FileUtils.forceDelete(written);
+        }
+        finally {
+            FileUtils.deleteQuietly(jarDirectory);
+        }
+    }
+
+    @Test
+    public void testFrameOutputStream() throws IOException {
+        //Multibyte characters misaligned with the frame buffer, written both in small and in large chunks
+        StringBuilder text = new StringBuilder("a");
+        for (int i = 0; i < 10000; i++) text.append(i % 2 == 0 ? "\u00e9" : "\u20ac\ud83d\ude00");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream frameStream = new DataOutputStream(bytes);
+        byte[] encoded = text.toString().getBytes("UTF-8");
+        BlockProtocol.FrameOutputStream small = new BlockProtocol.FrameOutputStream(frameStream, BlockProtocol.STDOUT);
+        for (byte b : encoded) small.write(b);
+        small.flush();
+        BlockProtocol.FrameOutputStream large = new BlockProtocol.FrameOutputStream(frameStream, BlockProtocol.STDERR);
+        large.write(encoded, 0, 9000);
+        large.write(encoded, 9000, encoded.length - 9000);
+        large.flush();
+
+        StringBuilder stdOut = new StringBuilder();
+        StringBuilder stdErr = new StringBuilder();
+        int frames = 0;
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        BlockProtocol.Frame frame;
+        while ((frame = BlockProtocol.readFrame(input)) != null) {
+            (frame.getTag() == BlockProtocol.STDOUT ? stdOut : stdErr).append(frame.getText());
+            frames++;
+        }
+        assert frames > 4;
+        assert stdOut.toString().equals(text.toString());
+        assert stdErr.toString().equals(text.toString());
+    }
+
+    @Test
+    public void testJarClassLoaderCache() throws Exception {
+        //Package the test blocks as a module JAR
+        File classes = new File(ArithmeticBlock.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        File jarFile = File.createTempFile("testJarClassLoaderCache", ".jar");
+        jarFile.deleteOnExit();
+        try (JarOutputStream jar = new JarOutputStream(new FileOutputStream(jarFile))) {
+            for (File file : new File(classes, "test").listFiles()) {
+                jar.putNextEntry(new JarEntry("test/" + file.getName()));
+                FileUtils.copyFile(file, jar);
+                jar.closeEntry();
+            }
+        }
+
+        try (JarClassLoaderCache cache = new JarClassLoaderCache()) {
+            cache.setMaxSize(1);
+            for (int i = 0; i < 3; i++) {
+                if (i == 2) jarFile.setLastModified(jarFile.lastModified() - 10000);
+                BlockData blockData = new BlockData("ARITHMETIC");
+                blockData.getInput().put("Operand1", i);
+                blockData.getInput().put("Operand2", 5);
+                blockData.getProperties().put("Operation", "add");
+
+                BlockData result = cache.execute(jarFile, "test", blockData);
+                assert result.getProcessOutput().equals(String.valueOf(i + 5));
+                assert result.getOutput().get("Operand3").equals(i + 5);
+            }
+        }
+    }
+
+    @Test
+    public void testBinaryBlockDataCodec() throws Exception {
+        Table table = new Table();
+        table.setColumnHeaders(Arrays.asList("A", "B"));
+        table.setRows(Arrays.asList(Arrays.asList("1", "2"), Arrays.asList("3", "4")));
+
+        List<Point> points = new ArrayList<>();
+        points.add(new Point(new Coordinate(1.0, 2.0), "first"));
+        points.add(new Point(new Coordinate(3.0, 4.0, 5.0)));
+        Trace trace = new Trace();
+        trace.setPoints(points);
+        trace.setTraceMode(TraceMode.MARKERS_ONLY);
+        Graph graph = new Graph();
+        graph.setTraces(Arrays.asList(trace));
+
+        BlockData blockData = new BlockData("ARITHMETIC");
+        blockData.getInput().put("Number", 5);
+        blockData.getInput().put("Files", Arrays.asList(new File("a.txt"), new File("b.txt")));
+        blockData.getInput().put("Samples", new double[]{0.5, 1.5});
+        blockData.getProperties().put("Decimal", new BigDecimal("1.25"));
+        blockData.getOutput().put("Table", table);
+        blockData.getOutput().put("Graph", graph);
+        blockData.setProcessOutput("done");
+
+        BinaryBlockDataCodec codec = new BinaryBlockDataCodec();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        codec.encode(blockData, bytes);
+        BlockData decoded = codec.decode(new ByteArrayInputStream(bytes.toByteArray()));
+
+        assert decoded.getName().equals("ARITHMETIC");
+        assert decoded.getInput().get("Number").equals(5);
+        assert decoded.getInput().get("Files").equals(Arrays.asList(new File("a.txt"), new File("b.txt")));
+        assert Arrays.equals((double[]) decoded.getInput().get("Samples"), new double[]{0.5, 1.5});
+        assert decoded.getProperties().get("Decimal").equals(new BigDecimal("1.25"));
+        assert ((Table) decoded.getOutput().get("Table")).toCSV().equals(table.toCSV());
+        assert ((Graph) decoded.getOutput().get("Graph")).toJSON().similar(graph.toJSON());
+        assert decoded.getProcessOutput().equals("done");
+    }
+
+    @Test
+    public void testTraceArrays() {
+        Trace trace = new Trace();
+        trace.setCoordinates(new double[]{1, 2, 3}, new double[]{4, Double.NaN, 6});
+        trace.setLabels(new String[]{"a", null, "c"});
+        JSONObject json = trace.toJSON();
+        assert json.getJSONArray("x").length() == 3;
+        assert json.getJSONArray("y").isNull(1);
+        assert !json.has("z");
+        assert trace.getPoints().get(2).getCoordinate().getY() == 6.0;
+        assert trace.getPoints().get(1).getCoordinate().getY() == null;
+
+        //Points appended through the adapter grow the arrays, an axis appearing later is missing for earlier points
+        trace.getPoints().add(new Point(new Coordinate(7.0, 8.0, 9.0)));
+        assert trace.size() == 4;
+        assert trace.getZ().length == 4 && Double.isNaN(trace.getZ()[0]) && trace.getZ()[3] == 9.0;
+        assert trace.getLabels()[3] == null;
+    }
+
+    @Test
+    public void testTracePoints() {
+        List<Point> points = new ArrayList<>();
+        points.add(new Point(new Coordinate(1.0, 2.0), "a"));
+        points.add(new Point(new Coordinate(3.0, 4.0)));
+        Trace trace = new Trace();
+        trace.setPoints(points);
+
+        //The list is copied, later changes only reach the trace through its view
+        points.add(new Point(new Coordinate(5.0, 6.0)));
+        assert trace.size() == 2;
+        List<Point> view = trace.getPoints();
+        view.set(1, new Point(new Coordinate(3.0, 5.0, 7.0), "b"));
+        assert trace.getY()[1] == 5.0 && Double.isNaN(trace.getZ()[0]) && trace.getZ()[1] == 7.0;
+        assert Arrays.asList(trace.getLabels()).equals(Arrays.asList("a", "b"));
+
+        view.add(0, new Point(new Coordinate(0.0, 1.0)));
+        assert Arrays.equals(trace.getX(), new double[]{0, 1, 3});
+        assert Arrays.asList(trace.getLabels()).equals(Arrays.asList(null, "a", "b"));
+        Point removed = view.remove(1);
+        assert removed.getLabel().equals("a") && removed.getCoordinate().getY() == 2.0;
+        assert Arrays.equals(trace.getY(), new double[]{1, 5});
+        assert view.get(1).getCoordinate().getZ() == 7.0;
+
+        Iterator<Point> iterator = view.iterator();
+        iterator.next();
+        iterator.remove();
+        assert trace.size() == 1 && trace.getLabels()[0].equals("b");
+        view.clear();
+        assert trace.size() == 0 && view.isEmpty();
+    }
+
+    @Test
+    public void testGraphDecimator() throws IOException {
+        double[] x = new double[10000];
+        double[] y = new double[10000];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = i;
+            y[i] = Math.sin(i / 100.0);
+        }
+        y[5000] = 10;
+        Trace trace = new Trace();
+        trace.setCoordinates(x, y);
+        Graph graph = new Graph();
+        graph.setTraces(Arrays.asList(trace));
+
+        Trace lttb = new GraphDecimator(100, GraphDecimator.Method.LTTB).decimate(graph).getTraces().get(0);
+        assert lttb.size() == 100;
+        assert lttb.getX()[0] == 0 && lttb.getX()[99] == 9999;
+        Trace minMax = new GraphDecimator(100, GraphDecimator.Method.MIN_MAX).decimate(trace);
+        assert minMax.size() <= 100;
+        //Spikes survive both methods
+        assert Arrays.binarySearch(lttb.getX(), 5000) >= 0;
+        assert Arrays.binarySearch(minMax.getX(), 5000) >= 0;
+
+        //The full resolution sidecar restores the original graph
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new BinaryBlockDataCodec().encodeGraph(graph, bytes);
+        Graph restored = new BinaryBlockDataCodec().decodeGraph(new ByteArrayInputStream(bytes.toByteArray()));
+        assert Arrays.equals(restored.getTraces().get(0).getY(), y);
+    }
+
+    @Test
+    public void testJsonWriter() throws IOException {
+        Trace trace = new Trace();
+        trace.setCoordinates(new double[]{1, 2.5, 3}, new double[]{-4, Double.NaN, 1e-7});
+        trace.setLabels(new String[]{"a \"quoted\"", "</script>", null});
+        trace.setTraceMode(TraceMode.MARKER_AND_LINE);
+        Marker marker = new Marker();
+        marker.setSize(3.0);
+        trace.setMarker(marker);
+        Axis axis = new Axis();
+        axis.setMax(10);
+        Layout layout = new Layout();
+        layout.setTitle("Line\nbreak");
+        layout.setXaxis(axis);
+        layout.setYaxis(axis);
+        Graph graph = new Graph();
+        graph.setTraces(Arrays.asList(trace));
+        graph.setLayout(layout);
+
+        StringWriter json = new StringWriter();
+        try (JsonWriter writer = new JsonWriter(json)) {
+            graph.writeJSON(writer);
+        }
+        assert new JSONObject(json.toString()).similar(new JSONObject(graph.toJSON().toString()));
+
+        Table table = new Table();
+        table.setColumnHeaders(Arrays.asList("A", "B"));
+        table.setRowHeaders(Arrays.asList("1"));
+        table.setRows(Arrays.asList(Arrays.asList("x", "y")));
+        json = new StringWriter();
+        try (JsonWriter writer = new JsonWriter(json)) {
+            table.writeJSON(writer);
+        }
+        assert new JSONObject(json.toString()).similar(new JSONObject(table.toJSON().toString()));
+    }
+
+    @Test
+    public void testOutputPreview() {
+        Table table = new Table();
+        table.setColumnHeaders(Arrays.asList("A"));
+        table.setRows(Arrays.asList(Arrays.asList("1"), Arrays.asList("2"), Arrays.asList("3")));
+        JSONArray data = table.head(2).toJSON().getJSONArray("data");
+        assert data.length() == 3;
+        assert data.getJSONArray(2).getString(0).equals("2");
+
+        Trace line = new Trace();
+        Trace cloud = new Trace();
+        for (int i = 0; i < 1000; i++) {
+            line.addPoint(i, i % 7);
+            cloud.addPoint(i, i, i);
+        }
+        Graph graph = new Graph();
+        graph.setTraces(Arrays.asList(line, cloud));
+        Graph preview = new GraphDecimator(50, GraphDecimator.Method.LTTB).preview(graph);
+        //3D traces cannot be decimated, they are cut short instead
+        assert preview.getTraces().get(0).size() == 50;
+        assert preview.getTraces().get(1).size() == 50;
+        assert preview.getTraces().get(1).getZ()[49] == 49;
+    }
+
+    @Test
+    public void testOutputHandlers() throws IOException {
+        File outputFolder = Files.createTempDirectory("testOutputHandlers").toFile();
+        Workflow workflow = new Workflow(ClassLoader.getSystemClassLoader(), ":test",null,"");
+        OutputContext context = new OutputContext(workflow, outputFolder);
+        OutputHandlerRegistry registry = workflow.getOutputHandlers();
+
+        //Subclasses use the handler of their closest registered superclass
+        ColumnarTable table = new ColumnarTable();
+        table.addLongColumn("A").append(1);
+        JSONObject tableOutput = registry.writeOutput(table, context);
+        assert tableOutput.getString("type").equals("TABLE");
+        assert new File(outputFolder, tableOutput.getJSONObject("value").getString("filename")).isFile();
+        assert registry.writeOutput(42, context).getString("value").equals("42");
+
+        registry.register(new OutputHandler<Number>() {
+            @Override
+            public Class<Number> getOutputType() {
+                return Number.class;
+            }
+
+            @Override
+            public JSONObject writeOutput(Number output, OutputContext context) {
+                return new JSONObject().put("type", "NUMBER").put("value", output.doubleValue());
+            }
+        });
+        assert registry.writeOutput(42, context).getString("type").equals("NUMBER");
+        assert registry.writeOutput("42", context).getString("type").equals("STRING");
+        assert registry.writeOutput(null, context) == null;
+        FileUtils.deleteDirectory(outputFolder);
+    }
+
+    @Test
+    public void testOutputCapture() {
+        OutputCapture capture = new OutputCapture(10);
+        capture.append("abc");
+        assert capture.toString().equals("abc");
+        for (int i = 0; i < 100; i++) capture.append("0123456789");
+        assert capture.getTruncated() == 993;
+        assert capture.toString().equals("abc01\n... [993 characters truncated] ...\n56789");
+    }
+
+    @Test
+    public void testProgressFile() throws IOException, NoSuchMethodException, InstantiationException, IllegalAccessException, InvocationTargetException, FieldMismatchException {
+        String json = FileUtils.readFileToString(new File("test_data/test.json"),Charset.defaultCharset());
+        File outputFile = File.createTempFile("testProgressFile",".json");
+        outputFile.deleteOnExit();
+        Workflow workflow = new Workflow(ClassLoader.getSystemClassLoader(), ":test",null,"");
+        workflow.setProgressBatchSize(2);
+        workflow.execute(new JSONObject(json),"test_data",outputFile.getAbsolutePath());
+
+        //The final state is saved when the workflow ends even though the last batch is incomplete
+        JSONArray progress = new JSONArray(FileUtils.readFileToString(outputFile,Charset.defaultCharset()));
+        assert progress.length() == 3;
+        for (int i = 0; i < progress.length(); i++) {
+            assert progress.getJSONObject(i).getBoolean("completed");
+        }
+        assert !new File(outputFile.getAbsolutePath() + ".tmp").exists();
+    }
+
+    @Test
+    public void testWorkflowListener() throws IOException, NoSuchMethodException, InstantiationException, IllegalAccessException, InvocationTargetException, FieldMismatchException {
+        String json = FileUtils.readFileToString(new File("test_data/test.json"),Charset.defaultCharset());
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        Workflow workflow = new Workflow(ClassLoader.getSystemClassLoader(), ":test",null,"");
+        workflow.addListener(new WorkflowListenerAdapter() {
+            @Override
+            public void onBlockStarted(int blockId, Block block, OutputCapture stdOut, OutputCapture stdErr) {
+                events.add("started " + blockId);
+            }
+
+            @Override
+            public void onBlockCompleted(int blockId, JSONObject blockObject, Object output, BlockTimings timings) {
+                assert blockObject.getBoolean("completed");
+                assert timings.getRunTime() >= 0;
+                events.add("completed " + blockId);
+            }
+
+            @Override
+            public void onWorkflowCompleted(JSONArray blocksArray, boolean error) {
+                events.add("workflow " + error);
+            }
+        });
+        workflow.execute(new JSONObject(json),"test_data",null);
+
+        assert events.size() == 7;
+        assert events.get(6).equals("workflow false");
+        assert events.indexOf("started 1") < events.indexOf("completed 1");
+    }
+
+    @Test
+    public void testBlockMetrics() throws IOException, NoSuchMethodException, InstantiationException, IllegalAccessException, InvocationTargetException, FieldMismatchException {
+        String json = FileUtils.readFileToString(new File("test_data/test.json"),Charset.defaultCharset());
+        MetricsRegistry registry = new MetricsRegistry();
+        Workflow workflow = new Workflow(ClassLoader.getSystemClassLoader(), ":test",null,"");
+        workflow.addListener(registry);
+        JSONArray blocks = workflow.execute(new JSONObject(json),"test_data",null);
+
+        for (int i = 0; i < blocks.length(); i++) {
+            JSONObject metrics = blocks.getJSONObject(i).getJSONObject("metrics");
+            assert metrics.getDouble("executeTime") >= 0;
+            assert metrics.has("queueTime") && metrics.has("inputTime") && metrics.has("outputTime");
+        }
+        assert registry.getWorkflowCount() == 1;
+        assert registry.getSummary("ARITHMETIC").getExecutions() == 1;
+        assert registry.getSummary("CONSTANT").getExecutions() == 2;
+        assert registry.getSummary("CONSTANT").getExecuteTime().getCount() == 2;
+        assert registry.toJSON().getJSONObject("blocks").has("ARITHMETIC");
+
+        //Concurrent workflows reuse block ids
+        Map<Integer, Block> first = workflow.indexBlocks(new JSONObject(json).getJSONArray("blocks"));
+        Map<Integer, Block> second = workflow.indexBlocks(new JSONObject(json).getJSONArray("blocks"));
+        registry.reset();
+        registry.onBlockStarted(1, first.get(1), new OutputCapture(), new OutputCapture());
+        registry.onBlockStarted(1, second.get(2), new OutputCapture(), new OutputCapture());
+        registry.onBlockCompleted(1, new JSONObject().put("type", "ARITHMETIC"), null, new BlockTimings());
+        registry.onBlockCompleted(1, new JSONObject().put("type", "CONSTANT"), null, new BlockTimings());
+        assert registry.getSummary("ARITHMETIC").getExecutions() == 1;
+        assert registry.getSummary("CONSTANT").getExecutions() == 1;
+    }
+
+    @Test
+    public void testTableCSV() throws IOException {
+        Table quoted = new Table();
+        quoted.setRowHeaders(Arrays.asList("r1"));
+        quoted.setColumnHeaders(Arrays.asList("Name", "Note"));
+        quoted.setRows(Arrays.asList(Arrays.asList("a,b", "say \"hi\"\nbye")));
+        assert quoted.toCSV().equals(",Name,Note\nr1,\"a,b\",\"say \"\"hi\"\"\nbye\"\n");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        quoted.writeCSV(bytes, Charset.forName("UTF-8"));
+        assert bytes.toString("UTF-8").equals(quoted.toCSV());
+    }
+
+    @Test
+    public void testColumnarTable() {
+        ColumnarTable table = new ColumnarTable();
+        ColumnarTable.LongColumn ids = table.addLongColumn("ID");
+        ColumnarTable.DoubleColumn values = table.addDoubleColumn("Value");
+        table.addStringColumn("Label");
+        table.addRow(1, 0.5, "low");
+        table.addRow(2L, 2.5, "high");
+
+        //Columns appended in chunks only form rows once all of them are complete
+        ids.append(new long[]{3, 4}, 0, 2);
+        values.append(new double[]{3.5, 4.5}, 0, 2);
+        assert table.getRowCount() == 2;
+        ((ColumnarTable.StringColumn) table.getColumn(2)).append("high");
+        ((ColumnarTable.StringColumn) table.getColumn(2)).append("low");
+        assert table.getRowCount() == 4;
+        assert ((ColumnarTable.StringColumn) table.getColumn(2)).getDictionarySize() == 2;
+
+        assert table.getRows().get(3).equals(Arrays.asList("4", "4.5", "low"));
+        assert table.toCSV().equals("ID,Value,Label\n1,0.5,low\n2,2.5,high\n3,3.5,high\n4,4.5,low\n");
+
+        ColumnarTable copy = SerializationUtils.clone(table);
+        assert copy.toCSV().equals(table.toCSV());
+
+        //Headers are read only, the setters rebuild the columns
+        try {
+            table.getColumnHeaders().add("Extra");
+            assert false;
+        }
+        catch (UnsupportedOperationException e) {
+            assert table.getColumnHeaders().size() == 3;
+        }
+        table.setColumnHeaders(Arrays.asList("Key", "Score", "Level"));
+        table.setRows(Arrays.asList(Arrays.asList("7", "1.0", "x"), Arrays.asList("8", "2.50", "y")));
+        assert table.getColumn(0) instanceof ColumnarTable.LongColumn;
+        assert table.getColumn(1) instanceof ColumnarTable.StringColumn;
+        assert table.toCSV().equals("Key,Score,Level\n7,1.0,x\n8,2.50,y\n");
+
+        ColumnarTable rows = new ColumnarTable();
+        rows.setRows(Arrays.asList(Arrays.asList("1.5", "a"), Arrays.asList("2.0", "b")));
+        assert rows.getColumn(0) instanceof ColumnarTable.DoubleColumn;
+        assert rows.getColumnHeaders().isEmpty();
+        rows.setColumnHeaders(Arrays.asList("Value", "Name"));
+        assert rows.toCSV().equals("Value,Name\n1.5,a\n2.0,b\n");
+    }
+
     @Test
     public void testJSONSummation() throws IOException, NoSuchMethodException, InstantiationException, IllegalAccessException, InvocationTargetException, FieldMismatchException {
 
@@ -84,5 +1067,17 @@ public class WorkflowDesignerTest {
         assert jsonArray.length() == 1;
         assert jsonArray.getJSONObject(0).getJSONObject("output").getString("value").equals("AB");
     }
-}
 
+    /**
+     * Compile a class without annotation processing, so that no block index is generated for it
+     */
+    private static void compile(File outputDirectory, String className, String source) throws IOException {
+        File sourceFile = new File(outputDirectory, className.replace('.', '/') + ".java");
+        FileUtils.writeStringToFile(sourceFile, source, "UTF-8");
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        int status = compiler.run(null, null, null, "-proc:none", "-classpath", System.getProperty("java.class.path"),
+                "-d", outputDirectory.getAbsolutePath(), sourceFile.getAbsolutePath());
+        assert status == 0;
+        FileUtils.forceDelete(sourceFile);
+    }
+}
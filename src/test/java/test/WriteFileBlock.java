@@ -0,0 +1,28 @@
+package test;
+
+import cz.zcu.kiv.WorkflowDesigner.Annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+
+import static cz.zcu.kiv.WorkflowDesigner.Type.FILE;
+import static cz.zcu.kiv.WorkflowDesigner.Type.STRING;
+
+@BlockType(type ="WRITE_FILE", family = "IO")
+public class WriteFileBlock implements Serializable {
+
+    @BlockProperty(name = "Content", type = STRING)
+    private String content;
+
+    @BlockOutput(name = "File", type = FILE)
+    private File file;
+
+    @BlockExecute
+    public File process() throws IOException {
+        file = File.createTempFile("write_file_", ".txt");
+        Files.write(file.toPath(), content.getBytes("UTF-8"));
+        return file;
+    }
+}